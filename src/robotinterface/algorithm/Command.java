@@ -54,6 +54,16 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
     private final String name;
     private final int id;
     private static int classCounter = 0;
+    //reaproveitada no desenho das ligações deste comando
+    protected final Line2D.Double linkLine = new Line2D.Double();
+    //layout em cache: limites da subárvore e argumentos do último ident;
+    //um comando inválido sempre tem todos os ancestrais inválidos
+    private final Rectangle2D.Double boundsCache = new Rectangle2D.Double();
+    private double boundsJ, boundsK;
+    private boolean boundsValid = false;
+    private double layoutX, layoutY, layoutJ, layoutK;
+    private boolean layoutValid = false;
+    private double drawnX, drawnY, drawnWidth = -1, drawnHeight = -1;
 
     public Command() {
         id = classCounter++;
@@ -78,6 +88,7 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
 
     public void setNext(Command next) {
         this.next = next;
+        invalidateLayout();
     }
 
     public final Command getPrevious() {
@@ -86,6 +97,7 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
 
     public void setPrevious(Command previous) {
         this.prev = previous;
+        invalidateLayout();
     }
 
     public Command getParent() {
@@ -93,7 +105,9 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
     }
 
     public void setParent(Command parent) {
+        invalidateLayout();
         this.parent = parent;
+        invalidateLayout();
     }
 
     public final int getLevel() {
@@ -121,6 +135,7 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
         c.next = this;
         c.parent = parent;
         prev = c;
+        c.invalidateLayout();
         return true;
     }
 
@@ -132,19 +147,91 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
             next.prev = c;
         }
         next = c;
+        c.invalidateLayout();
         return true;
     }
 
     public void remove() {
+        invalidateLayout();
         parent = null;
         if (prev != null) {
             prev.next = next;
+            prev.invalidateLayout();
         }
         if (next != null) {
             next.prev = prev;
+            next.invalidateLayout();
         }
     }
 
+    /**
+     * Descarta o layout em cache deste comando e dos seus ancestrais. Deve
+     * ser chamado quando a estrutura, o tamanho ou a posição do desenho do
+     * comando mudam.
+     */
+    public final void invalidateLayout() {
+        Command it = this;
+        while (it != null) {
+            if (it != this && !it.boundsValid && !it.layoutValid) {
+                //os ancestrais já estão inválidos
+                break;
+            }
+            it.boundsValid = false;
+            it.layoutValid = false;
+            it = it.parent;
+        }
+    }
+
+    /**
+     * Verifica se o desenho do comando mudou de tamanho ou foi movido desde o
+     * último layout e, nesse caso, invalida o layout.
+     */
+    public final void checkLayout() {
+        GraphicObject d = getDrawableResource();
+        if (d != null) {
+            Rectangle2D.Double b = d.getObjectBouds();
+            if (b.x != drawnX || b.y != drawnY || b.width != drawnWidth || b.height != drawnHeight) {
+                invalidateLayout();
+            }
+        }
+    }
+
+    /**
+     * Move o desenho do comando, invalidando o layout se a posição ou o
+     * tamanho mudaram.
+     */
+    protected final void place(GraphicObject d, double x, double y) {
+        Rectangle2D.Double b = d.getObjectBouds();
+        if (b.x != x || b.y != y || b.width != drawnWidth || b.height != drawnHeight) {
+            d.setLocation(x, y);
+            drawnX = x;
+            drawnY = y;
+            drawnWidth = b.width;
+            drawnHeight = b.height;
+            invalidateLayout();
+        }
+    }
+
+    /**
+     * Retorna true se a subárvore já foi posicionada com estes argumentos e
+     * nada mudou desde então.
+     */
+    protected final boolean isLayoutValid(double x, double y, double j, double k) {
+        return layoutValid && x == layoutX && y == layoutY && j == layoutJ && k == layoutK;
+    }
+
+    /**
+     * Marca a subárvore como posicionada com estes argumentos; chamado ao
+     * final do ident, depois dos filhos.
+     */
+    protected final void setLayoutValid(double x, double y, double j, double k) {
+        layoutX = x;
+        layoutY = y;
+        layoutJ = j;
+        layoutK = k;
+        layoutValid = true;
+    }
+
     //inicio da execução do comando
     public void begin(ResourceManager rm) throws ExecutionException {
     }
@@ -154,6 +241,12 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
         return true;
     }
 
+    //true se perform() só muda de resultado quando um temporizador do
+    //relógio vence; o interpretador pode então dormir até o próximo vencimento
+    public boolean isClockBound() {
+        return false;
+    }
+
     //executada ao final do comando a fim de saber qual é o proximo comando a ser executado
     public Command step(ResourceManager rm) throws ExecutionException {
         if (next == null) {
@@ -222,6 +315,7 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
 
         double cw = 0;
         double ch = 0;
+        double y0 = y;
 
         Rectangle2D.Double t = null;
         if (this instanceof GraphicResource) {
@@ -243,20 +337,53 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
                 GraphicObject d = ((GraphicResource) this).getDrawableResource();
 
                 if (d != null) {
-                    d.setLocation(px, py);
+                    place(d, px, py);
                 }
             }
 
             y += ch + j;
         }
+        setLayoutValid(x, y0, j, k);
 
         if (next != null) {
             next.ident(x, y, j, k);
         }
     }
 
+    /**
+     * Retorna os limites da subárvore do comando. O valor fica em cache até
+     * que {@link #invalidateLayout()} seja chamado para o comando ou algum
+     * descendente; o cálculo é feito por
+     * {@link #computeBounds(Rectangle2D.Double, double, double)}.
+     */
     @Override
-    public Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
+    public final Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
+        if (tmp == null) {
+            tmp = new Rectangle2D.Double();
+        }
+        tmp.setRect(getCachedBounds(j, k));
+        return tmp;
+    }
+
+    /**
+     * Retorna os limites em cache da subárvore sem copiá-los. O retângulo é
+     * reaproveitado quando o layout muda e não deve ser alterado nem
+     * guardado; usado no desenho e nas buscas, que só leem os limites.
+     */
+    public final Rectangle2D.Double getCachedBounds(double j, double k) {
+        if (!boundsValid || j != boundsJ || k != boundsK) {
+            Rectangle2D.Double r = computeBounds(boundsCache, j, k);
+            if (r != boundsCache) {
+                boundsCache.setRect(r);
+            }
+            boundsJ = j;
+            boundsK = k;
+            boundsValid = true;
+        }
+        return boundsCache;
+    }
+
+    protected Rectangle2D.Double computeBounds(Rectangle2D.Double tmp, double j, double k) {
         return getBounds(this, tmp, j, k);
     }
 
@@ -301,8 +428,8 @@ public abstract class Command implements GraphicResource, GraphicFlowchart, Flow
                 if (d != null) {
                     Rectangle2D.Double bThis = resource.getObjectBouds();
                     Rectangle2D.Double bNext = d.getObjectBouds();
-                    Line2D.Double l = new Line2D.Double(bThis.getCenterX(), bThis.getMaxY(), bNext.getCenterX(), bNext.getMinY());
-                    g.draw(l);
+                    linkLine.setLine(bThis.getCenterX(), bThis.getMaxY(), bNext.getCenterX(), bNext.getMinY());
+                    g.draw(linkLine);
                 }
             }
         }
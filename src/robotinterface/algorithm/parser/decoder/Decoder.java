@@ -1007,6 +1007,7 @@ public class Decoder implements DecoderConstants {
       ;
     }
     i.addLineArg(0, Argument.EXPRESSION, ex);
+    i.setProcedure(ex);
     b.add(i);
     localBlock = b;
   }
@@ -1023,6 +1024,7 @@ public class Decoder implements DecoderConstants {
     jj_consume_token(RPAREN);
     block(w, false);
     w.addLineArg(0, Argument.EXPRESSION, ex);
+    w.setProcedure(ex);
     b.add(w);
     localBlock = b;
   }
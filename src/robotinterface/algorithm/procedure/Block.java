@@ -352,15 +352,15 @@ public class Block extends Procedure {
     }
 
     @Override
-    public Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
+    protected Rectangle2D.Double computeBounds(Rectangle2D.Double tmp, double j, double k) {
 
-        tmp = super.getBounds(tmp, j, k);
+        tmp = super.computeBounds(tmp, j, k);
 
-        Rectangle2D.Double p = new Rectangle2D.Double();
+        Rectangle2D.Double p;
         Command it = this.start;
 //        boolean ident = true;
         while (it != null) {
-            p = it.getBounds(p, j, k);
+            p = it.getCachedBounds(j, k);
 
             tmp.x = (p.x < tmp.x) ? p.x : tmp.x;
             tmp.y = (p.y < tmp.y) ? p.y : tmp.y;
@@ -384,6 +384,7 @@ public class Block extends Procedure {
     public final void ident(double x, double y, double j, double k) {
         double cw = 0;
         double ch = 0;
+        double y0 = y;
 
         Rectangle2D.Double t = null;
         if (this instanceof GraphicResource) {
@@ -397,25 +398,31 @@ public class Block extends Procedure {
         if (t != null) {
             cw = t.width;
             ch = t.height;
+            y += ch + j;
+        }
 
-            double px = x - cw / 2;
-            double py = y;
+        //só reposiciona a subárvore se algo mudou dentro dela ou se o bloco
+        //foi deslocado
+        if (!isLayoutValid(x, y0, j, k)) {
+            if (t != null) {
+                double px = x - cw / 2;
+                double py = y0;
 
-            if (this instanceof GraphicResource) {
-                GraphicObject d = ((GraphicResource) this).getDrawableResource();
+                if (this instanceof GraphicResource) {
+                    GraphicObject d = ((GraphicResource) this).getDrawableResource();
 
-                if (d != null) {
-                    d.setLocation(px, py);
+                    if (d != null) {
+                        place(d, px, py);
+                    }
                 }
             }
 
-            y += ch + j;
+            start.ident(x, y, j, k);
+            setLayoutValid(x, y0, j, k);
         }
 
-        start.ident(x, y, j, k);
-
         if (getNext() != null) {
-            getNext().ident(x, y + this.getBounds(null, j, k).height - (ch + j), j, k);
+            getNext().ident(x, y + this.getCachedBounds(j, k).height - (ch + j), j, k);
         }
 
     }
@@ -189,7 +189,7 @@ public class Function extends Block {
     }
 
     private static Command boundaryTest(Point2D p, Command it) {
-        if (it.getBounds(null, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K).contains(p)) {
+        if (it.getCachedBounds(GraphicFlowchart.GF_J, GraphicFlowchart.GF_K).contains(p)) {
             return it;
         }
         return null;
@@ -500,8 +500,8 @@ public class Function extends Block {
                 if (d != null) {
                     Rectangle2D.Double bThis = resource.getObjectBouds();
                     Rectangle2D.Double bStart = d.getObjectBouds();
-                    Line2D.Double l = new Line2D.Double(bThis.getCenterX(), bThis.getMaxY(), bStart.getCenterX(), bStart.getMinY());
-                    g.draw(l);
+                    linkLine.setLine(bThis.getCenterX(), bThis.getMaxY(), bStart.getCenterX(), bStart.getMinY());
+                    g.draw(linkLine);
                 }
             }
         }
@@ -72,8 +72,8 @@ public class If extends Procedure {
     public class InnerBlock extends Block {
 
         @Override
-        public Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
-            Rectangle2D.Double bounds = super.getBounds(tmp, j, k);
+        protected Rectangle2D.Double computeBounds(Rectangle2D.Double tmp, double j, double k) {
+            Rectangle2D.Double bounds = super.computeBounds(tmp, j, k);
             bounds.height += j;
             return bounds;
         }
@@ -85,9 +85,13 @@ public class If extends Procedure {
 
     public class BlockFalse extends InnerBlock {
     }
+    private static final int MAX_LAYOUT_PASSES = 4;
     private static Color myColor = Color.decode("#FFA500");
     private BlockTrue blockTrue;
     private BlockFalse blockFalse;
+    private final Rectangle2D.Double identTrue = new Rectangle2D.Double();
+    private final Rectangle2D.Double identFalse = new Rectangle2D.Double();
+    private final Path2D.Double path = new Path2D.Double();
     private GraphicObject resource = null;
     private String var;
 
@@ -150,23 +154,22 @@ public class If extends Procedure {
     }
 
     @Override
-    public Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
+    protected Rectangle2D.Double computeBounds(Rectangle2D.Double tmp, double j, double k) {
         //tmp = Command.getBounds(this, tmp, j, k, Ix, Iy, a);
-        tmp = super.getBounds(tmp, j, k);
+        tmp = super.computeBounds(tmp, j, k);
 
-        Rectangle2D.Double p = new Rectangle2D.Double();
-        p.setRect(tmp);
+        Rectangle2D.Double p;
         double bfh;
         double bth;
         double width;
         //false
-        p = getBlockFalse().getBounds(p, j, k);
+        p = getBlockFalse().getCachedBounds(j, k);
         bfh = p.height;
         tmp.x = (p.x < tmp.x) ? p.x : tmp.x;
         width = p.getMaxX();
         tmp.width = p.width;
         //true
-        p = getBlockTrue().getBounds(p, j, k);
+        p = getBlockTrue().getCachedBounds(j, k);
         bth = p.height;
         tmp.x = (p.x < tmp.x) ? p.x : tmp.x;
         tmp.width += p.width + 2 * k;
@@ -197,11 +200,18 @@ public class If extends Procedure {
 //        return tmp;
 //    }
 
+    private static boolean sameBounds(Rectangle2D.Double r, Block b, double j, double k) {
+        Rectangle2D.Double n = b.getCachedBounds(j, k);
+        return r.x == n.x && r.width == n.width && r.height == n.height;
+    }
+
     @Override
     public void ident(double x, double y, double j, double k) {
+        double y0 = y;
 
-        Rectangle2D.Double btb = blockTrue.getBounds(null, j, k);
-        Rectangle2D.Double bfb = blockFalse.getBounds(null, j, k);
+        //cópias, pois o layout dos blocos altera os limites em cache
+        Rectangle2D.Double btb = blockTrue.getBounds(identTrue, j, k);
+        Rectangle2D.Double bfb = blockFalse.getBounds(identFalse, j, k);
         
 //        double w = btb.width + 2 * k + bfb.width;
 //        double pbtx = -btb.width - k;
@@ -227,7 +237,7 @@ public class If extends Procedure {
                 GraphicObject d = ((GraphicResource) this).getDrawableResource();
 
                 if (d != null) {
-                    d.setLocation(px, py);
+                    place(d, px, py);
 //                    System.out.println(this + " [" + px + "," + py + "]");
                 }
             }
@@ -237,12 +247,22 @@ public class If extends Procedure {
 
         Rectangle2D.Double btbs = blockTrue.get(0).getDrawableResource().getObjectBouds();
         Rectangle2D.Double bfbs = blockFalse.get(0).getDrawableResource().getObjectBouds();
-        double pbt = Math.abs(btb.x - btbs.getCenterX());
-        double pbf = Math.abs(bfb.x - bfbs.getCenterX());
-        blockTrue.ident(x - (btb.width - pbt) - k / 2, y, j, k);
-        blockFalse.ident(x + pbf + k / 2, y, j, k);
+        //a posição dos blocos depende dos seus limites, que dependem da
+        //posição anterior: repete até que os limites não mudem mais
+        for (int i = 0; i < MAX_LAYOUT_PASSES; i++) {
+            double pbt = Math.abs(btb.x - btbs.getCenterX());
+            double pbf = Math.abs(bfb.x - bfbs.getCenterX());
+            blockTrue.ident(x - (btb.width - pbt) - k / 2, y, j, k);
+            blockFalse.ident(x + pbf + k / 2, y, j, k);
+            if (sameBounds(btb, blockTrue, j, k) && sameBounds(bfb, blockFalse, j, k)) {
+                break;
+            }
+            btb = blockTrue.getBounds(btb, j, k);
+            bfb = blockFalse.getBounds(bfb, j, k);
+        }
 
         y += ((bfb.height > btb.height) ? bfb.height : btb.height) + j;
+        setLayoutValid(x, y0, j, k);
         if (getNext() != null) {
             getNext().ident(x, y, j, k);
         }
@@ -776,13 +796,13 @@ public class If extends Procedure {
     @Override
     public void drawLines(Graphics2D g) {
         if (resource != null) {
-            Path2D.Double path = new Path2D.Double();
+            path.reset();
             Rectangle2D.Double bThis = resource.getObjectBouds();
-            Rectangle2D.Double bBlock = getBounds(null,
+            Rectangle2D.Double bBlock = getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
-            Rectangle2D.Double bTrueStart = getBlockTrue().start.getBounds(null,
+            Rectangle2D.Double bTrueStart = getBlockTrue().start.getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
@@ -794,15 +814,15 @@ public class If extends Procedure {
                 }
             }
 
-            Rectangle2D.Double bTrueB = getBlockTrue().getBounds(null,
+            Rectangle2D.Double bTrueB = getBlockTrue().getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
-            Rectangle2D.Double bFalseStart = getBlockFalse().start.getBounds(null,
+            Rectangle2D.Double bFalseStart = getBlockFalse().start.getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
-            Rectangle2D.Double bTrueEnd = getBlockTrue().getEnd().getPrevious().getBounds(null,
+            Rectangle2D.Double bTrueEnd = getBlockTrue().getEnd().getPrevious().getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
@@ -814,7 +834,7 @@ public class If extends Procedure {
                 }
             }
 
-            Rectangle2D.Double bFalseEnd = getBlockFalse().getEnd().getPrevious().getBounds(null,
+            Rectangle2D.Double bFalseEnd = getBlockFalse().getEnd().getPrevious().getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
@@ -834,7 +854,7 @@ public class If extends Procedure {
                 }
             }
 
-            Rectangle2D.Double bFalseB = getBlockFalse().getBounds(null,
+            Rectangle2D.Double bFalseB = getBlockFalse().getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
@@ -40,7 +40,10 @@ import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JTextField;
 import org.nfunk.jep.JEP;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.ParseException;
 import org.nfunk.jep.SymbolTable;
+import org.nfunk.jep.Variable;
 import robotinterface.algorithm.parser.parameterparser.Argument;
 import robotinterface.drawable.swing.DrawableProcedureBlock;
 import robotinterface.drawable.GraphicObject;
@@ -65,6 +68,29 @@ import robotinterface.util.trafficsimulator.Clock;
  */
 public class Procedure extends Command implements Classifiable {
 
+    /**
+     * Expressões de um procedimento já compiladas em árvores do JEP. As
+     * árvores ficam ligadas às variáveis da tabela de símbolos em que foram
+     * geradas, por isso só são válidas para essa tabela.
+     */
+    private static class CompiledProcedure {
+
+        private final SymbolTable symbolTable;
+        private final String[] names;
+        private final String[] initializers;
+        private final Node[] initializerNodes;
+        private final String[] statements;
+        private final Node[] statementNodes;
+
+        private CompiledProcedure(SymbolTable symbolTable, String[] names, String[] initializers, String[] statements) {
+            this.symbolTable = symbolTable;
+            this.names = names;
+            this.initializers = initializers;
+            this.statements = statements;
+            initializerNodes = new Node[initializers.length];
+            statementNodes = new Node[statements.length];
+        }
+    }
     private static Object nill = new Object();
     private static Color myColor = Color.decode("#ACD630");
     private ArrayList<String> names;
@@ -73,6 +99,7 @@ public class Procedure extends Command implements Classifiable {
     private String procedure;
     private boolean varArgs;
     private Pattern p = Pattern.compile("(\\S+)(\\+\\+)");
+    private volatile CompiledProcedure compiled = null;
 
     public Procedure() { //tornar private 
         varArgs = true;
@@ -114,8 +141,11 @@ public class Procedure extends Command implements Classifiable {
     }
 
     public final void setProcedure(String procedure) {
-        this.procedure = procedure;
-        updateVariables();
+        if (!procedure.equals(this.procedure)) {
+            this.procedure = procedure;
+            updateVariables();
+            compiled = null;
+        }
     }
 
     @Override
@@ -151,11 +181,15 @@ public class Procedure extends Command implements Classifiable {
 
     //usado pelos descendentes dessa classe para executar expressoes
     protected final Object execute(String procedure, ResourceManager rm) throws ExecutionException {
-        Object o = null;
+        JEP parser = rm.getResource(JEP.class);
 
-        updateVariables();
+        if (procedure.equals(this.procedure)) {
+            //o texto do bloco é compilado uma única vez
+            return execute(getCompiled(parser), parser);
+        }
 
-        JEP parser = rm.getResource(JEP.class);
+        //expressões geradas em tempo de execução (ReadDevice, KeyboardInput...)
+        Object o = null;
         SymbolTable st = parser.getSymbolTable();
         for (int i = 0; i < names.size(); i++) {
             String varName = names.get(i);
@@ -163,11 +197,6 @@ public class Procedure extends Command implements Classifiable {
             if (st.getVar(varName) != null && st.getVar(varName).hasValidValue()) {
                 throw new ExecutionException("Variable already exists!");
             } else {
-                if (!names.contains(varName)) {
-                    names.add(varName);
-                    values.add(varValue);
-                }
-
                 Object v = null;
                 if (varValue != null) {
                     parser.parseExpression(varValue.toString());
@@ -181,14 +210,9 @@ public class Procedure extends Command implements Classifiable {
         for (String str : procedure.split(";")) {
             str = str.trim();
             if (!(str.startsWith("var") || str.isEmpty())) {
-
                 Matcher m = p.matcher(str);
                 if (m.find()) {
-                    String valid = m.group(1) + " = " + m.group(1) + " + 1";
-                    if (this.procedure.equals(procedure)) {
-                        this.procedure = procedure.replace(str, valid);
-                    }
-                    str = valid;
+                    str = m.group(1) + " = " + m.group(1) + " + 1";
                 }
 
                 parser.parseExpression(str);
@@ -199,7 +223,106 @@ public class Procedure extends Command implements Classifiable {
             }
         }
 
-//        parser.parseExpression(procedure);
+        return o;
+    }
+
+    private CompiledProcedure getCompiled(JEP parser) {
+        CompiledProcedure cp = compiled;
+        SymbolTable st = parser.getSymbolTable();
+        if (cp == null || cp.symbolTable != st) {
+            cp = compile(st);
+            compiled = cp;
+        }
+        return cp;
+    }
+
+    private CompiledProcedure compile(SymbolTable st) {
+        String[] n = new String[names.size()];
+        String[] v = new String[values.size()];
+        for (int i = 0; i < n.length; i++) {
+            n[i] = names.get(i);
+            Object value = values.get(i);
+            v[i] = (value != null) ? value.toString() : null;
+        }
+
+        ArrayList<String> statements = splitStatements(true);
+        return new CompiledProcedure(st, n, v, statements.toArray(new String[statements.size()]));
+    }
+
+    /**
+     * Obtém as expressões do procedimento, sem as declarações de variáveis e
+     * com o operador ++ já reescrito.
+     *
+     * @return expressões na ordem em que são executadas
+     */
+    public final Collection<String> getStatements() {
+        return splitStatements(false);
+    }
+
+    private ArrayList<String> splitStatements(boolean rewrite) {
+        ArrayList<String> statements = new ArrayList<>();
+        String source = procedure;
+        for (String str : source.split(";")) {
+            str = str.trim();
+            if (!(str.startsWith("var") || str.isEmpty())) {
+                Matcher m = p.matcher(str);
+                if (m.find()) {
+                    String valid = m.group(1) + " = " + m.group(1) + " + 1";
+                    if (rewrite) {
+                        procedure = procedure.replace(str, valid);
+                    }
+                    str = valid;
+                }
+                statements.add(str);
+            }
+        }
+        return statements;
+    }
+
+    private Object execute(CompiledProcedure cp, JEP parser) throws ExecutionException {
+        Object o = null;
+        SymbolTable st = cp.symbolTable;
+
+        for (int i = 0; i < cp.names.length; i++) {
+            Variable var = st.getVar(cp.names[i]);
+            if (var != null && var.hasValidValue()) {
+                throw new ExecutionException("Variable already exists!");
+            }
+
+            Object v = null;
+            if (cp.initializers[i] != null) {
+                try {
+                    if (cp.initializerNodes[i] == null) {
+                        cp.initializerNodes[i] = parser.parse(cp.initializers[i]);
+                    }
+                    v = parser.evaluate(cp.initializerNodes[i]);
+                } catch (Exception e) {
+                    //mantém o comportamento do JEP: valor inválido vira null
+                    v = null;
+                }
+            }
+
+            st.makeVarIfNeeded(cp.names[i], v);
+        }
+
+        for (int i = 0; i < cp.statements.length; i++) {
+            Node node = cp.statementNodes[i];
+            try {
+                if (node == null) {
+                    node = parser.parse(cp.statements[i]);
+                    cp.statementNodes[i] = node;
+                }
+            } catch (ParseException e) {
+                throw new ExecutionException(e.getMessage() + " in \"" + cp.statements[i] + "\"");
+            }
+
+            try {
+                o = parser.evaluate(node);
+            } catch (Exception e) {
+                throw new ExecutionException(e.getMessage() + " in \"" + cp.statements[i] + "\"");
+            }
+        }
+
         return o;
     }
 
@@ -227,11 +350,11 @@ public class Procedure extends Command implements Classifiable {
         values.add(value);
     }
 
-    protected Collection<String> getVariableNames() {
+    public Collection<String> getVariableNames() {
         return names;
     }
 
-    protected Collection<Object> getVariableValues() {
+    public Collection<Object> getVariableValues() {
         return values;
     }
 
@@ -495,6 +618,7 @@ public class Procedure extends Command implements Classifiable {
     public Procedure copy(Procedure copy) {
         if (copy != null) {
             copy.procedure = procedure;
+            copy.compiled = null;
             copy.names.addAll(names);
             copy.values.addAll(values);
             copy.myArgs.clear();
@@ -555,5 +679,7 @@ public class Procedure extends Command implements Classifiable {
         } else {
             procedure += "; " + string;
         }
+        updateVariables();
+        compiled = null;
     }
 }
@@ -52,6 +52,8 @@ public class While extends Block {
 
     private static Color myColor = Color.decode("#1281BD");
     private GraphicObject resource = null;
+    private final Path2D.Double path = new Path2D.Double();
+    private final Rectangle2D.Double lineBounds = new Rectangle2D.Double();
 
     public While() {
     }
@@ -70,6 +72,8 @@ public class While extends Block {
         if (evaluate(rm)) {
             return start;
         }
+        //condição falsa: sai do laço sem executar o bloco
+        returnNext = true;
         return super.step(rm);
     }
 
@@ -126,15 +130,16 @@ public class While extends Block {
     @Override
     public void drawLines(Graphics2D g) {
         if (resource != null) {
-            Path2D.Double path = new Path2D.Double();
+            path.reset();
             Rectangle2D.Double bThis = resource.getObjectBouds();
-            Rectangle2D.Double bBlock = start.getBounds(null, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K);
+            //cópia, pois é ampliado abaixo
+            Rectangle2D.Double bBlock = start.getBounds(lineBounds, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K);
             path.moveTo(bThis.getCenterX(), bThis.getMaxY());
             path.lineTo(bThis.getCenterX(), bThis.getMaxY() + GF_J);
 
             Command c = start;
 
-            Rectangle2D.Double bEnd = c.getBounds(null,
+            Rectangle2D.Double bEnd = c.getCachedBounds(
                     GraphicFlowchart.GF_J,
                     GraphicFlowchart.GF_K);
 
@@ -143,9 +148,9 @@ public class While extends Block {
             while (c.getNext() != null && !(c.getNext() instanceof BlockEnd)) {
                 c = c.getNext();
                 //calcula o tamanho real (não estimado) do bloco
-                bBlock.add(c.getBounds(null, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K));
+                bBlock.add(c.getCachedBounds(GraphicFlowchart.GF_J, GraphicFlowchart.GF_K));
             }
-            bBlock.add(c.getBounds(null, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K));
+            bBlock.add(c.getCachedBounds(GraphicFlowchart.GF_J, GraphicFlowchart.GF_K));
 
             //adicionando bordas
             bBlock.x -= GF_J;
@@ -204,8 +209,8 @@ public class While extends Block {
     }
 
     @Override
-    public Rectangle2D.Double getBounds(Rectangle2D.Double tmp, double j, double k) {
-        Rectangle2D.Double bounds = super.getBounds(tmp, j, k);
+    protected Rectangle2D.Double computeBounds(Rectangle2D.Double tmp, double j, double k) {
+        Rectangle2D.Double bounds = super.computeBounds(tmp, j, k);
         bounds.width += k;
         bounds.x -= k / 2;
         bounds.height += 2 * j;
@@ -53,9 +53,13 @@ import java.awt.event.MouseWheelEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.WeakHashMap;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import robotinterface.drawable.Drawable;
 import robotinterface.drawable.swing.component.Widget;
+import robotinterface.util.Scheduler;
 import java.awt.Shape;
 import java.awt.Stroke;
 import java.awt.geom.Line2D;
@@ -77,12 +81,27 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
     public final double MAX_ZOOM = 4.0;
     protected long PAINT_DELAY = 20;
     protected long NO_PAINT_DELAY = 100;
+    //intervalo entre pinturas da tela inteira; entre elas só as regiões sujas
+    protected long FULL_PAINT_DELAY = 100;
+    //folga, em unidades do mundo, para sombras e bordas fora dos limites
+    private static final double CULL_MARGIN = 10;
     protected final Clock clock;
     private final int tempTransformsSize = 6;
     private AffineTransform[] tempTransforms;
     private boolean[] tempTransformsInUse;
     private final ArrayList<Drawable> objects;
     private final ArrayList<Drawable> objectsTmp;
+    //objectsTmp é refeito só quando objects muda (protegido por objects)
+    private boolean objectsChanged = true;
+    //últimos limites na tela de cada objeto, para achar as regiões sujas
+    private final IdentityHashMap<Drawable, Rectangle> screenBounds = new IdentityHashMap<>();
+    //objetos que pediram para ser redesenhados (ver invalidate()) e a área,
+    //no mundo, a redesenhar; sem área, os limites do objeto
+    private static final WeakHashMap<Drawable, Rectangle2D.Double> invalidated = new WeakHashMap<>();
+    private final Rectangle screenRect = new Rectangle();
+    private final Rectangle dirtyRect = new Rectangle();
+    private final Rectangle dirtyArea = new Rectangle();
+    private long lastFullPaint = 0;
     private final ArrayList<Integer> keys;
     private final Point mouse;
     private boolean dragEnabled = true;
@@ -91,7 +110,37 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
     private boolean dragging = false;
     private int mouseDragX = 0;
     private int mouseDragY = 0;
-    private Thread repaintThread;
+    //repintura periódica no Scheduler; repaintAlive indica se está agendada.
+    //A tela inteira é pintada a cada FULL_PAINT_DELAY; entre uma e outra só
+    //as regiões dos objetos que mudaram de lugar, de tamanho ou que pediram
+    //para ser redesenhados
+    private boolean repaintAlive = false;
+    private final Object repaintLock = new Object();
+    private final Runnable repaintTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (repaintLock) {
+                if (!repaint) {
+                    repaintAlive = false;
+                    return;
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastFullPaint >= FULL_PAINT_DELAY) {
+                lastFullPaint = now;
+                repaint();
+            } else {
+                SwingUtilities.invokeLater(dirtyTask);
+            }
+            Scheduler.schedule(this, PAINT_DELAY);
+        }
+    };
+    private final Runnable dirtyTask = new Runnable() {
+        @Override
+        public void run() {
+            repaintDirtyRegions();
+        }
+    };
     private BufferedImage buffer;
     private boolean repaint = false;
     protected int width;
@@ -102,6 +151,11 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
     private double zoom = 1.0;
     protected boolean autoFullSize = true;
     private Rectangle2D.Double bounds;
+    //área visível do painel e área sendo pintada, em coordenadas do mundo
+    private final Rectangle2D.Double viewport = new Rectangle2D.Double();
+    private final Rectangle2D.Double paintArea = new Rectangle2D.Double();
+    private final Rectangle clipBounds = new Rectangle();
+    private final Rectangle widgetBounds = new Rectangle();
     //********** componente atual
     private AffineTransform originalTransform;
     private AffineTransform currentTransform;
@@ -141,7 +195,6 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
         for (int i = 0; i < tempTransformsSize; i++) {
             tempTransforms[i] = new AffineTransform();
         }
-        repaintThread = null;
         bounds = new Rectangle2D.Double();
         currentGraphicAtributes = new GraphicAttributes();
         currentInputState = new InputState();
@@ -195,33 +248,20 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
 
     public final void play() {
         clock.setPaused(false);
-        //cria thread para pintar a tela
-        if (repaintThread == null) {
-            repaintThread = new Thread("Repaint Thread- " + Thread.activeCount()) {
-                @Override
-                public void run() {
-                    try {
-                        while (true) {
-                            if (repaint) {
-                                repaint();
-                                Thread.sleep(PAINT_DELAY);
-                            } else {
-                                Thread.sleep(NO_PAINT_DELAY);
-                            }
-                        }
-                    } catch (InterruptedException ex) {
-                        repaintThread = null;
-                    }
-                }
-            };
-            repaintThread.start();
+        //agenda a repintura periódica da tela
+        synchronized (repaintLock) {
+            repaint = true;
+            if (!repaintAlive) {
+                repaintAlive = true;
+                Scheduler.execute(repaintTask);
+            }
         }
-
-        repaint = true;
     }
 
     public final void pause() {
-        repaint = false;
+        synchronized (repaintLock) {
+            repaint = false;
+        }
     }
 
     public final boolean contains(Drawable d) {
@@ -235,11 +275,13 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             synchronized (objects) {
                 if (!objects.contains(d)) {
                     objects.add(0,d);
+                    objectsChanged = true;
                 }
             }
             if (d instanceof WidgetContainer) {
                 ((WidgetContainer) d).appendTo(this);
             }
+            repaint();
         }
     }
 
@@ -253,7 +295,9 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
                 }
             }
             objects.clear();
+            objectsChanged = true;
         }
+        repaint();
     }
 
     public final void remove(Drawable d) {
@@ -263,8 +307,9 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             }
         }
         synchronized (objects) {
-            objects.remove(d);
+            objectsChanged |= objects.remove(d);
         }
+        repaint();
     }
 
     @Override
@@ -277,10 +322,17 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             return;
         }
 
+        //região suja pedida pelo Swing; sem recorte, o painel inteiro
+        clipBounds.setBounds(0, 0, width, height);
+        g.getClipBounds(clipBounds);
+        toWorld(0, 0, width, height, viewport);
+        toWorld(clipBounds.x, clipBounds.y, clipBounds.width, clipBounds.height, paintArea);
+
         //desenha o fundo dentro do buffer
         Graphics g1 = buffer.getGraphics();
         g1.setColor(Color.WHITE);
-        g1.fillRect(0, 0, width, height);
+        g1.fillRect(clipBounds.x, clipBounds.y, clipBounds.width, clipBounds.height);
+        g1.dispose();
 
         //desenha o buffer no painel
         g.drawImage(buffer, 0, 0, null);
@@ -301,10 +353,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             tempTransformsInUse[i] = false;
         }
 
-        objectsTmp.clear();
-        synchronized (objects) {
-            objectsTmp.addAll(objects);
-        }
+        updateObjects();
 
         //desenha fundo
         for (Drawable d : objectsTmp) {
@@ -325,7 +374,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
         //desenha coisas
         for (Drawable d : objectsTmp) {
             currentObject = d;
-            if ((d.getDrawableLayer() & DEFAULT_LAYER) != 0) {
+            if ((d.getDrawableLayer() & DEFAULT_LAYER) != 0 && !isCulled(d, paintArea)) {
                 currentTransform.setTransform(originalTransform);
                 g2.setTransform(currentTransform);
                 currentTransform.translate(globalX, globalY);
@@ -360,30 +409,45 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
 
         //reseta o zoom e posição para desenhar os componentes swing
         g2.setTransform(originalTransform);
-        g2.setClip(0, 0, width, height);
+        g2.setClip(clipBounds);
 
-        //redefine o tamanho e a posição dos componentes swing
+        //redefine o tamanho e a posição dos componentes swing; os que estão
+        //fora da tela só são escondidos
         for (Drawable d : objectsTmp) {
             if (d instanceof WidgetContainer) {
                 WidgetContainer dwc = (WidgetContainer) d;
+                boolean culled = isCulled(d, viewport);
                 for (Widget c : dwc) {
-                    if (!dwc.isWidgetVisible() && !c.isStatic()) {
-                        c.getJComponent().setVisible(false);
+                    JComponent jc = c.getJComponent();
+                    if (culled || (!dwc.isWidgetVisible() && !c.isStatic())) {
+                        if (jc.isVisible()) {
+                            jc.setVisible(false);
+                        }
                         continue;
                     }
 
                     //ativando double buffer e fundo transparente
-                    c.getJComponent().setVisible(true);
-                    c.getJComponent().setDoubleBuffered(true);
-//                    c.getJComponent().setOpaque(false);
-                    c.getJComponent().revalidate();
+                    if (!jc.isVisible()) {
+                        jc.setVisible(true);
+                        jc.setDoubleBuffered(true);
+//                        jc.setOpaque(false);
+                    }
 
                     //tamanho do componente swing
-                    currentTransform.setToIdentity();
-                    currentTransform.translate(globalX, globalY);
-                    currentTransform.scale(zoom, zoom);
-                    currentTransform.translate(d.getPosX(), d.getPosY());
-                    c.getJComponent().setBounds(currentTransform.createTransformedShape(c.getBounds()).getBounds());
+                    Rectangle b = c.getBounds();
+                    double x1 = globalX + zoom * (d.getPosX() + b.x);
+                    double y1 = globalY + zoom * (d.getPosY() + b.y);
+                    double x2 = globalX + zoom * (d.getPosX() + b.x + b.width);
+                    double y2 = globalY + zoom * (d.getPosY() + b.y + b.height);
+                    widgetBounds.x = (int) Math.floor(x1);
+                    widgetBounds.y = (int) Math.floor(y1);
+                    widgetBounds.width = (int) Math.ceil(x2) - widgetBounds.x;
+                    widgetBounds.height = (int) Math.ceil(y2) - widgetBounds.y;
+                    if (jc.getX() != widgetBounds.x || jc.getY() != widgetBounds.y
+                            || jc.getWidth() != widgetBounds.width || jc.getHeight() != widgetBounds.height) {
+                        jc.setBounds(widgetBounds);
+                        jc.revalidate();
+                    }
                 }
             }
         }
@@ -399,12 +463,211 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             mouseDragY = 0;
         }
 
-        if (beginDrawing) {
-            beginDrawing = false;
-            mouseClick = false;
-            mouseWheelRotation = 0;
+        //cliques e rolagens pedem a tela inteira (ver requestInputPaint()),
+        //então esta pintura já passou por todos os objetos
+        beginDrawing = false;
+        mouseClick = false;
+        mouseWheelRotation = 0;
+
+    }
+
+    /**
+     * Refaz a cópia da lista de objetos usada no desenho, se ela mudou.
+     * Chamado pela thread do Swing.
+     */
+    private void updateObjects() {
+        synchronized (objects) {
+            if (!objectsChanged) {
+                return;
+            }
+            objectsTmp.clear();
+            objectsTmp.addAll(objects);
+            objectsChanged = false;
         }
+        screenBounds.clear();
+    }
+
+    /**
+     * Pede que o objeto seja redesenhado na próxima pintura parcial, para
+     * mudanças que não alteram os seus limites (o feixe de um sensor, por
+     * exemplo). Pode ser chamado de qualquer thread.
+     */
+    public static void invalidate(Drawable d) {
+        invalidate(d, null);
+    }
 
+    /**
+     * Pede que a área dada, em coordenadas do mundo, seja redesenhada na
+     * próxima pintura parcial do painel que contém o objeto. Pode ser chamado
+     * de qualquer thread.
+     *
+     * @param area área a redesenhar, ou null para os limites do objeto
+     */
+    public static void invalidate(Drawable d, Rectangle2D area) {
+        synchronized (invalidated) {
+            if (!invalidated.containsKey(d)) {
+                invalidated.put(d, (area == null) ? null : new Rectangle2D.Double(area.getX(), area.getY(), area.getWidth(), area.getHeight()));
+            } else {
+                Rectangle2D.Double last = invalidated.get(d);
+                if (last != null) {
+                    if (area == null) {
+                        invalidated.put(d, null);
+                    } else {
+                        last.add(area);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pede a pintura das regiões da tela onde algum objeto mudou de lugar ou
+     * de tamanho desde a última verificação (a região antiga e a nova de cada
+     * um), das áreas pedidas por {@link #invalidate(Drawable, Rectangle2D)} e
+     * das marcadas por {@link #findDirtyAreas()}. Chamado pela thread do
+     * Swing.
+     */
+    private void repaintDirtyRegions() {
+        updateObjects();
+        dirtyRect.setBounds(0, 0, 0, 0);
+        boolean anyInvalidated;
+        synchronized (invalidated) {
+            anyInvalidated = !invalidated.isEmpty();
+        }
+        for (Drawable d : objectsTmp) {
+            if (d == this || !(d instanceof GraphicObject)) {
+                continue;
+            }
+            toScreen((GraphicObject) d, screenRect);
+            Rectangle last = screenBounds.get(d);
+            if (last == null) {
+                screenBounds.put(d, new Rectangle(screenRect));
+                addDirty(screenRect);
+            } else if (!last.equals(screenRect)) {
+                addDirty(last);
+                addDirty(screenRect);
+                last.setBounds(screenRect);
+            }
+            if (anyInvalidated) {
+                Rectangle2D.Double area;
+                synchronized (invalidated) {
+                    if (!invalidated.containsKey(d)) {
+                        continue;
+                    }
+                    area = invalidated.remove(d);
+                }
+                if (area == null) {
+                    addDirty(screenRect);
+                } else {
+                    addDirtyArea(area);
+                }
+            }
+        }
+        findDirtyAreas();
+        if (!dirtyRect.isEmpty()) {
+            repaint(dirtyRect);
+        }
+    }
+
+    /**
+     * Chamado antes de cada pintura parcial, pela thread do Swing. As
+     * subclasses que desenham algo fora dos objetos (como o destaque do
+     * comando em execução) marcam aqui, com {@link #addDirtyArea(Rectangle2D)},
+     * as áreas que mudaram.
+     */
+    protected void findDirtyAreas() {
+    }
+
+    /**
+     * Marca uma área, em coordenadas do mundo, para a próxima pintura
+     * parcial. Só deve ser usado dentro de {@link #findDirtyAreas()}.
+     */
+    protected final void addDirtyArea(Rectangle2D area) {
+        if (area.isEmpty()) {
+            return;
+        }
+        double x1 = globalX + zoom * (area.getMinX() - CULL_MARGIN);
+        double y1 = globalY + zoom * (area.getMinY() - CULL_MARGIN);
+        double x2 = globalX + zoom * (area.getMaxX() + CULL_MARGIN);
+        double y2 = globalY + zoom * (area.getMaxY() + CULL_MARGIN);
+        dirtyArea.x = (int) Math.floor(x1);
+        dirtyArea.y = (int) Math.floor(y1);
+        dirtyArea.width = (int) Math.ceil(x2) - dirtyArea.x;
+        dirtyArea.height = (int) Math.ceil(y2) - dirtyArea.y;
+        addDirty(dirtyArea);
+    }
+
+    private void addDirty(Rectangle r) {
+        if (dirtyRect.isEmpty()) {
+            dirtyRect.setBounds(r);
+        } else {
+            dirtyRect.add(r);
+        }
+    }
+
+    /**
+     * Calcula os limites do objeto na tela. Os limites são aumentados do
+     * maior lado do objeto, pois nem todos desenham a partir do canto (o
+     * robô, por exemplo, é desenhado centrado na sua posição).
+     */
+    private void toScreen(GraphicObject o, Rectangle r) {
+        Rectangle2D.Double b = o.getObjectBouds();
+        double m = Math.max(b.width, b.height) + CULL_MARGIN;
+        double x1 = b.x - m, y1 = b.y - m, x2 = b.x + b.width + m, y2 = b.y + b.height + m;
+        int layer = o.getDrawableLayer();
+        if ((layer & (BACKGROUND_LAYER | DEFAULT_LAYER)) != 0) {
+            x1 = globalX + zoom * x1;
+            y1 = globalY + zoom * y1;
+            x2 = globalX + zoom * x2;
+            y2 = globalY + zoom * y2;
+            if ((layer & TOP_LAYER) != 0) {
+                //também desenhado sem posição global e zoom
+                x1 = Math.min(x1, b.x - m);
+                y1 = Math.min(y1, b.y - m);
+                x2 = Math.max(x2, b.x + b.width + m);
+                y2 = Math.max(y2, b.y + b.height + m);
+            }
+        }
+        r.x = (int) Math.floor(x1);
+        r.y = (int) Math.floor(y1);
+        r.width = (int) Math.ceil(x2) - r.x;
+        r.height = (int) Math.ceil(y2) - r.y;
+    }
+
+    /**
+     * Pede a pintura da tela inteira por causa de uma entrada do usuário. O
+     * estado do mouse é descartado ao fim de cada pintura, então a próxima
+     * precisa passar por todos os objetos; como o Swing junta as regiões
+     * pedidas antes de pintar, nenhuma pintura parcial acontece entre a
+     * entrada e esta.
+     */
+    private void requestInputPaint() {
+        repaint();
+    }
+
+    /**
+     * Converte um retângulo da tela em coordenadas do mundo (sem posição
+     * global e zoom).
+     */
+    private void toWorld(double x, double y, double w, double h, Rectangle2D.Double r) {
+        r.setRect((x - globalX) / zoom, (y - globalY) / zoom, w / zoom, h / zoom);
+    }
+
+    /**
+     * Verifica se o objeto está fora da área dada e pode deixar de ser
+     * desenhado. Só contêineres de widgets no espaço do mundo são
+     * descartados, pois o desenho deles não passa dos seus limites; os
+     * demais (robôs, painéis, linhas) podem desenhar em qualquer lugar.
+     */
+    private boolean isCulled(Drawable d, Rectangle2D.Double area) {
+        if (!(d instanceof WidgetContainer) || (d.getDrawableLayer() & DEFAULT_LAYER) == 0) {
+            return false;
+        }
+        Rectangle2D.Double b = ((WidgetContainer) d).getObjectBouds();
+        return b.x - CULL_MARGIN > area.x + area.width
+                || b.x + b.width + CULL_MARGIN < area.x
+                || b.y - CULL_MARGIN > area.y + area.height
+                || b.y + b.height + CULL_MARGIN < area.y;
     }
 
     @Override
@@ -440,6 +703,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
                 }
             }
         }
+        requestInputPaint();
     }
 
     @Override
@@ -459,6 +723,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
                 keys.remove(keys.indexOf(e.getKeyCode()));
             }
         }
+        requestInputPaint();
     }
 
     @Override
@@ -469,12 +734,14 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
         if (midMouseButtonResetView && mouseButton == MouseEvent.BUTTON2) {
             resetView();
         }
+        requestInputPaint();
     }
 
     public void resetView() {
         zoom = 1;
         globalX = width / 2;
         globalY = height / 4;
+        repaint();
     }
 
     @Override
@@ -484,6 +751,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
         if (!super.hasFocus()) {
             super.requestFocusInWindow();
         }
+        requestInputPaint();
     }
 
     @Override
@@ -494,6 +762,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             mouseClick = true;
             mouseClickAndRelease = false;
         }
+        requestInputPaint();
     }
 
     @Override
@@ -521,6 +790,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             mouseDragX = 0;
             mouseDragY = 0;
         }
+        requestInputPaint();
     }
 
     @Override
@@ -531,9 +801,11 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             Point tmp = e.getPoint();
             tmp.translate(r.x, r.y);
             mouse.setLocation(tmp);
-            return;
+        } else {
+            mouse.setLocation(e.getPoint());
         }
-        mouse.setLocation(e.getPoint());
+        //objetos mudam de aparência com o mouse em cima
+        requestInputPaint();
     }
 
     @Override
@@ -542,6 +814,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
         if (zoomEnabled) {
             setZoom(mouseWheelRotation * 0.1, e.getPoint());
         }
+        requestInputPaint();
     }
 
     @Override
@@ -557,6 +830,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             this.setSize(width, height);
         }
         createBuffers();
+        repaint();
     }
 
     @Override
@@ -576,6 +850,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             globalX -= (int) (((pos.getX() - globalX) / zoom) * z);
             globalY -= (int) (((pos.getY() - globalY) / zoom) * z);
             zoom = zoom + z;
+            repaint();
         }
     }
 
@@ -588,13 +863,17 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
     }
 
     public void setPosition(int x, int y) {
-        globalX -= x;
-        globalY -= y;
+        if (x != 0 || y != 0) {
+            globalX -= x;
+            globalY -= y;
+            repaint();
+        }
     }
 
     public void center(Rectangle clip) {
         globalX = (int) (clip.width * zoom / 2.0 - width * zoom / 2.0);
         globalY = (int) (clip.height * zoom / 2.0 - height * zoom / 2.0);
+        repaint();
     }
 
     public Point getMouse(Point mouse) {
@@ -757,6 +1036,7 @@ public class DrawingPanel extends JPanel implements KeyListener, MouseListener,
             globalX = width / 2;
             globalY = height / 4;
         }
+        repaint();
     }
 
     public class GraphicAttributes {
@@ -0,0 +1,215 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.drawable.util;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Camada de desenho guardada em blocos de imagem (<i>tiles</i>) do tamanho
+ * da tela, para conteúdo que muda pouco entre um quadro e outro.
+ * <p>
+ * Os blocos cobrem a área visível na escala atual e são desenhados uma única
+ * vez por {@link #render(Graphics2D, Rectangle2D.Double)}; nos quadros
+ * seguintes só são copiados para a tela. Mudanças de zoom e
+ * {@link #invalidate()} descartam todos os blocos. Os blocos fora do recorte
+ * são mantidos, pois o painel pode pintar só uma parte da tela, até que
+ * passem de {@link #MAX_TILES}; então os que não foram usados no quadro são
+ * descartados. Conteúdo que só cresce (um rastro, por exemplo) pode ser
+ * acrescentado aos blocos existentes por
+ * {@link #append(Graphics2D, Rectangle2D.Double)}, sem redesenhar o resto.
+ * <p>
+ * Deve ser usada apenas pela thread de desenho.
+ *
+ * @author antunes
+ */
+public abstract class TileLayer {
+
+    public static final int TILE_SIZE = 256;
+    //blocos mantidos além dos visíveis no quadro
+    public static final int MAX_TILES = 64;
+    private final HashMap<Long, Tile> tiles = new HashMap<>();
+    private long frame = 0;
+    private final AffineTransform tileTransform = new AffineTransform();
+    private final Rectangle clip = new Rectangle();
+    private final Rectangle2D.Double area = new Rectangle2D.Double();
+    private double scale = 0;
+    private double fracX = 0;
+    private double fracY = 0;
+    private volatile boolean valid = false;
+
+    private static final class Tile {
+
+        final BufferedImage image;
+        long frame;
+
+        Tile(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    /**
+     * Desenha todo o conteúdo que está dentro de <code>area</code>, em
+     * coordenadas do mundo. O desenho pode passar da área; ela serve só para
+     * descartar o que certamente está fora.
+     */
+    protected abstract void render(Graphics2D g, Rectangle2D.Double area);
+
+    /**
+     * Desenha, por cima de um bloco já existente, o conteúdo acrescentado
+     * desde o último quadro. Só é chamado se {@link #beginFrame()} retornar
+     * <code>true</code>.
+     */
+    protected void append(Graphics2D g, Rectangle2D.Double area) {
+    }
+
+    /**
+     * Chamado no início de cada quadro.
+     *
+     * @return <code>true</code> se há conteúdo para acrescentar aos blocos
+     * existentes
+     */
+    protected boolean beginFrame() {
+        return false;
+    }
+
+    /**
+     * Chamado ao fim de cada quadro, depois que todos os blocos foram
+     * desenhados ou atualizados.
+     *
+     * @param rebuilt <code>true</code> se todos os blocos foram desenhados
+     * de novo neste quadro
+     */
+    protected void endFrame(boolean rebuilt) {
+    }
+
+    /**
+     * Descarta todos os blocos; o conteúdo é desenhado de novo no próximo
+     * quadro.
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * Desenha a camada em <code>g</code>, que deve estar nas coordenadas do
+     * mundo. Com rotação ou distorção o conteúdo é desenhado diretamente.
+     */
+    public void paint(Graphics2D g) {
+        boolean appending = beginFrame();
+        Object antialiasing = g.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        AffineTransform t = g.getTransform();
+        //sem recorte o retângulo volta inalterado
+        clip.setBounds(0, 0, -1, -1);
+        Rectangle c = g.getClipBounds(clip);
+        double s = t.getScaleX();
+        if (c == null || c.width < 0 || t.getShearX() != 0 || t.getShearY() != 0 || s <= 0 || s != t.getScaleY()) {
+            area.setRect(-Double.MAX_VALUE / 2, -Double.MAX_VALUE / 2, Double.MAX_VALUE, Double.MAX_VALUE);
+            render(g, area);
+            endFrame(true);
+            return;
+        }
+
+        //origem do mundo na tela, separada em parte inteira e fracionária
+        double ox = Math.floor(t.getTranslateX());
+        double oy = Math.floor(t.getTranslateY());
+        double fx = t.getTranslateX() - ox;
+        double fy = t.getTranslateY() - oy;
+        boolean rebuilt = false;
+        if (!valid || s != scale || fx != fracX || fy != fracY) {
+            tiles.clear();
+            rebuilt = true;
+            scale = s;
+            fracX = fx;
+            fracY = fy;
+            valid = true;
+        }
+
+        //blocos que cobrem a área de recorte, em pixels da tela
+        int i1 = (int) Math.floor((c.x * s + fx) / TILE_SIZE);
+        int i2 = (int) Math.floor(((c.x + c.width) * s + fx) / TILE_SIZE);
+        int j1 = (int) Math.floor((c.y * s + fy) / TILE_SIZE);
+        int j2 = (int) Math.floor(((c.y + c.height) * s + fy) / TILE_SIZE);
+
+        //acrescenta o conteúdo novo a todos os blocos guardados, visíveis ou não
+        frame++;
+        if (appending) {
+            for (Map.Entry<Long, Tile> e : tiles.entrySet()) {
+                long key = e.getKey();
+                Graphics2D tg = createGraphics(e.getValue().image, (int) (key >> 32), (int) key, s, fx, fy, antialiasing);
+                append(tg, area);
+                tg.dispose();
+            }
+        }
+
+        tileTransform.setToTranslation(ox, oy);
+        g.setTransform(tileTransform);
+        for (int i = i1; i <= i2; i++) {
+            for (int j = j1; j <= j2; j++) {
+                Long key = ((long) i << 32) ^ (j & 0xFFFFFFFFL);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile(g.getDeviceConfiguration().createCompatibleImage(TILE_SIZE, TILE_SIZE, Transparency.TRANSLUCENT));
+                    Graphics2D tg = createGraphics(tile.image, i, j, s, fx, fy, antialiasing);
+                    render(tg, area);
+                    tg.dispose();
+                    tiles.put(key, tile);
+                }
+                tile.frame = frame;
+                g.drawImage(tile.image, i * TILE_SIZE, j * TILE_SIZE, null);
+            }
+        }
+        g.setTransform(t);
+
+        if (tiles.size() > MAX_TILES) {
+            Iterator<Tile> it = tiles.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().frame != frame) {
+                    it.remove();
+                }
+            }
+        }
+        endFrame(rebuilt);
+    }
+
+    /**
+     * Prepara o desenho no bloco (i, j) e guarda em <code>area</code> a
+     * região do mundo que ele cobre.
+     */
+    private Graphics2D createGraphics(BufferedImage img, int i, int j, double s, double fx, double fy, Object antialiasing) {
+        Graphics2D tg = img.createGraphics();
+        if (antialiasing != null) {
+            tg.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+        }
+        tg.translate(-i * TILE_SIZE + fx, -j * TILE_SIZE + fy);
+        tg.scale(s, s);
+        area.setRect((i * TILE_SIZE - fx) / s, (j * TILE_SIZE - fy) / s, TILE_SIZE / s, TILE_SIZE / s);
+        return tg;
+    }
+
+    /**
+     * Verifica se o retângulo envolvente do segmento, aumentado de
+     * <code>margin</code>, encosta na área.
+     */
+    public static boolean intersects(Rectangle2D.Double area, double x1, double y1, double x2, double y2, double margin) {
+        return Math.max(x1, x2) + margin >= area.x && Math.min(x1, x2) - margin <= area.x + area.width
+                && Math.max(y1, y2) + margin >= area.y && Math.min(y1, y2) - margin <= area.y + area.height;
+    }
+
+    /**
+     * Número de blocos guardados.
+     */
+    public int size() {
+        return tiles.size();
+    }
+}
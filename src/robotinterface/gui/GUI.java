@@ -40,7 +40,6 @@ import java.util.Date;
 import java.util.EventListener;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
@@ -84,6 +83,7 @@ import robotinterface.gui.panels.Interpertable;
 import robotinterface.gui.panels.SimulationPanel;
 import robotinterface.gui.panels.TabController;
 import robotinterface.gui.panels.editor.EditorPanel;
+import robotinterface.gui.panels.console.ConsoleSink;
 import robotinterface.gui.panels.console.MessageConsole;
 import robotinterface.gui.panels.robot.RobotControlPanel;
 import static robotinterface.gui.panels.robot.RobotControlPanel.VIRTUAL_CONNECTION;
@@ -117,7 +117,7 @@ public class GUI extends JFrame implements ComponentListener {
     private boolean splitView = false;
     private static JTextArea console;
     public boolean LOG = false;
-    private static ConsoleManagerThread cmt = null;
+    private static volatile ConsoleSink consoleSink = null;
     private Interpreter mainInterpreter = new Interpreter();
     private Interpreter interpreter;
     private ShortcutsWindow shortcutsWindow;
@@ -130,44 +130,22 @@ public class GUI extends JFrame implements ComponentListener {
         return helpPanel;
     }
 
-    private static class ConsoleManagerThread extends Thread {
-
-        public ConcurrentLinkedQueue<String> queue = new ConcurrentLinkedQueue<>();
-
-        @Override
-        public void run() {
-            int size;
-            while (true) {
-                size = queue.size();
-                if (size != 0) {
-                    console.setText(console.getText() + "\n" + queue.poll());
-                    console.selectAll();
-                    if (size > 20) {
-                        System.err.println("Console Queue Overflow :/");
-                        console.setText("Console Queue Overflow :/\n" + queue.poll());
-                        queue.clear();
-                    }
-                }
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException ex) {
-                }
-            }
-        }
-
-        public void enqueue(String str) {
-            queue.offer(str);
-        }
-
-    }
-
+    /**
+     * Escreve uma linha no console. Pode ser chamado por qualquer thread; as
+     * linhas são mostradas pela thread do Swing, em lotes, a cada quadro.
+     */
     public static void print(String str) {
-        if (cmt == null || !cmt.isAlive()) {
-            cmt = new ConsoleManagerThread();
-            cmt.start();
+        ConsoleSink sink = consoleSink;
+        if (sink == null) {
+            //console ainda não criado
+            System.out.println(str);
+            return;
         }
+        sink.print(str);
+    }
 
-        cmt.enqueue(str);
+    public static ConsoleSink getConsoleSink() {
+        return consoleSink;
     }
 
     private GUI() {
@@ -199,6 +177,7 @@ public class GUI extends JFrame implements ComponentListener {
         setFocusable(true);
 
         console = new JTextArea();
+        consoleSink = new ConsoleSink(console);
         consolePanel.setLayout(new GridLayout());
         consolePanel.setName("Console");
         consolePanel.add(new JScrollPane(console));
@@ -418,11 +397,13 @@ public class GUI extends JFrame implements ComponentListener {
                 boolean connected = rcp.tryConnect();
                 if (connected) {
                     interpreter.setRobot(r);
+                    simulationPanel.getSimulation().setClock(interpreter.getClock());
                 }
                 return connected;
             } else {
                 //FAZER DIREITO
                 interpreter.setRobot(r);
+                simulationPanel.getSimulation().setClock(interpreter.getClock());
             }
         } else if (o == null) {
             int returnVal = JOptionPane.showConfirmDialog(this, "Nenhum robô está selecionado, quer que eu crie um?", "Executar", JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
@@ -60,6 +60,11 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
     private Item itemSelected = null;
     private int clickDrop = 0;
     private GraphicObject executionCommand = null;
+    //destaque marcado na última pintura parcial (ver findDirtyAreas())
+    private GraphicObject highlighted = null;
+    private boolean highlightedError = false;
+    private final Rectangle2D.Double highlightArea = new Rectangle2D.Double();
+    private final Rectangle2D.Double tmpArea = new Rectangle2D.Double();
 
     public FlowchartPanel(Function function, final Interpreter interpreter) {
         sidePanel = new SidePanel() {
@@ -97,9 +102,6 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
         add(sidePanel);
 
         this.interpreter = interpreter;
-        if (!interpreter.isAlive()) {
-            this.interpreter.start();
-        }
         setFunction(function);
         super.setName("Fluxograma");
         gridSize = -10;
@@ -132,6 +134,7 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
 
     public void ident(Function f) {
         addDummyBlocks(function, this);
+        checkLayout(function);
         ident(function, true);
         addAllDrawableResources(function, this);
     }
@@ -162,6 +165,25 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
         }
     }
 
+    /**
+     * Invalida o layout dos comandos cujo desenho mudou de tamanho (ao editar
+     * um parâmetro, por exemplo); o próximo ident só reposiciona as partes
+     * afetadas.
+     */
+    private static void checkLayout(Command c) {
+        c.checkLayout();
+        if (c instanceof Block) {
+            Command it = ((Block) c).getStart();
+            while (it != null) {
+                checkLayout(it);
+                it = it.getNext();
+            }
+        } else if (c instanceof If) {
+            checkLayout(((If) c).getBlockTrue());
+            checkLayout(((If) c).getBlockFalse());
+        }
+    }
+
     private static void hideAllWidgets(Command c, Command ign) {
         if (c != ign) {
             GraphicObject go = c.getDrawableResource();
@@ -261,9 +283,10 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
         return false;
     }
 
-    @Override
-    public void drawTopLayer(Graphics2D g, GraphicAttributes ga, InputState in) {
-
+    /**
+     * Atualiza o comando destacado como em execução.
+     */
+    private void updateExecutionCommand() {
         Command cmd = interpreter.getCurrentCommand();
 
         if (interpreter.getInterpreterState() == Interpreter.STOP) {
@@ -278,6 +301,35 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
                 }
             }
         }
+    }
+
+    /**
+     * Redesenha o destaque do comando em execução (ou com erro) quando ele
+     * muda de comando ou de lugar, sem esperar a pintura da tela inteira.
+     */
+    @Override
+    protected void findDirtyAreas() {
+        updateExecutionCommand();
+        Command error = interpreter.getErrorCommand();
+        GraphicObject h = (error != null) ? ((GraphicResource) error).getDrawableResource() : executionCommand;
+        if (h != null) {
+            tmpArea.setRect(h.getObjectShape().getBounds2D());
+        } else {
+            tmpArea.setRect(0, 0, 0, 0);
+        }
+        if (h != highlighted || (error != null) != highlightedError || !tmpArea.equals(highlightArea)) {
+            addDirtyArea(highlightArea);
+            addDirtyArea(tmpArea);
+            highlighted = h;
+            highlightedError = (error != null);
+            highlightArea.setRect(tmpArea);
+        }
+    }
+
+    @Override
+    public void drawTopLayer(Graphics2D g, GraphicAttributes ga, InputState in) {
+
+        updateExecutionCommand();
 
         Command error = interpreter.getErrorCommand();
 
@@ -369,7 +421,7 @@ public class FlowchartPanel extends DrawingPanel implements Interpertable {
     }
     
     private void printBounds(Graphics2D g, Command c) {
-        Rectangle2D.Double bounds = c.getBounds(null, GraphicFlowchart.GF_J, GraphicFlowchart.GF_K);
+        Rectangle2D.Double bounds = c.getCachedBounds(GraphicFlowchart.GF_J, GraphicFlowchart.GF_K);
         g.draw(bounds);
         g.drawString(c.getCommandName(), (int) bounds.getMaxX(), (int) bounds.y);
         if (c instanceof Block) {
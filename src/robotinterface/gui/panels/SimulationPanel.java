@@ -43,7 +43,6 @@ import java.awt.geom.Path2D;
 import java.awt.geom.Point2D;
 import java.io.Serializable;
 import java.util.ArrayList;
-import robotinterface.util.trafficsimulator.Timer;
 import robotinterface.robot.Robot;
 import static java.lang.Math.*;
 import java.util.Iterator;
@@ -51,6 +50,7 @@ import robotinterface.gui.panels.sidepanel.Item;
 import robotinterface.gui.panels.sidepanel.SidePanel;
 import robotinterface.robot.device.IRProximitySensor;
 import robotinterface.robot.simulation.Environment;
+import robotinterface.robot.simulation.Simulation;
 import robotinterface.util.LineIterator;
 
 /**
@@ -101,6 +101,7 @@ public class SimulationPanel extends DrawingPanel implements Serializable {
         ITEM_OBSTACLE_LINE = new Item("Parede", new Rectangle(0, 0, 20, 4), Environment.getObstacleColor(), "Parede ou obstáculo, detectado pelo sensor de distância");
     }
     private final ArrayList<Robot> robots = new ArrayList<>();
+    private final transient Simulation simulation = new Simulation(robots);
     private Environment env = new Environment();
     private Item itemSelected;
     private Point2D.Double point = null;
@@ -170,33 +171,8 @@ public class SimulationPanel extends DrawingPanel implements Serializable {
         sidePanel.add(ITEM_REMOVE_LINE);
         add(sidePanel);
 
-        //mapeia a posição a cada x ms
-        Timer timer = new Timer(300) {
-            ArrayList<Robot> tmpBots = new ArrayList<>();
-
-            @Override
-            public void run() {
-                tmpBots.clear();
-                synchronized (robots) {
-                    tmpBots.addAll(robots);
-                }
-
-                for (Robot robot : tmpBots) {
-                    if (!(robot.getLeftWheelSpeed() == 0 && robot.getRightWheelSpeed() == 0)) {
-                        robot.updateVirtualPerception();
-                    }
-
-//                    robot.setRightWheelSpeed(30);
-//                    robot.setLeftWheelSpeed(-30);
-                    if (this.getCount() % 20 == 0) {
-//                        robot.setRightWheelSpeed(Math.random() * 100);
-//                        robot.setLeftWheelSpeed(Math.random() * 100);
-                    }
-                }
-            }
-        };
-        timer.setDisposable(false);
-        clock.addTimer(timer);
+        //a física roda em uma thread própria, independente do desenho
+        simulation.start();
         clock.setPaused(false);
     }
 
@@ -204,6 +180,10 @@ public class SimulationPanel extends DrawingPanel implements Serializable {
         env = e;
     }
 
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
     public void hideSidePanel(boolean b) {
         sidePanel.setOpen(!b);
     }
@@ -0,0 +1,248 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.gui.panels.console;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+import robotinterface.util.Scheduler;
+
+/**
+ * Saída de texto do console, escrita por várias threads e mostrada em um
+ * componente Swing.
+ * <p>
+ * As linhas vão para um buffer circular limitado sem bloqueio: cada thread
+ * reserva uma posição com uma operação atômica e a thread do Swing esvazia o
+ * buffer a cada quadro, juntando até {@link #MAX_LINES_PER_FRAME} linhas em
+ * uma única alteração do documento. Se o buffer enche, quem escreve espera
+ * (contando em {@link #getWaits()}) até que haja espaço; se um arquivo de
+ * registro for definido, as linhas que não cabem vão para ele em vez de
+ * esperar. Nenhuma linha é descartada, a não ser que o console fique
+ * {@link #MAX_WAIT} milissegundos sem ser esvaziado.
+ *
+ * @author antunes
+ */
+public class ConsoleSink {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int MAX_LINES_PER_FRAME = 2048;
+    public static final long FRAME_DELAY = 16;
+    public static final long MAX_WAIT = 1000;
+    //tamanho máximo do texto mantido no componente
+    public static final int MAX_DOCUMENT_LENGTH = 1 << 20;
+    private final JTextComponent component;
+    private final AtomicReferenceArray<String> ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long reportedSpilled = 0;
+    private long reportedDropped = 0;
+    private final StringBuilder text = new StringBuilder();
+    private PrintWriter spill = null;
+    private final Runnable post = new Runnable() {
+        @Override
+        public void run() {
+            SwingUtilities.invokeLater(drain);
+        }
+    };
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    public ConsoleSink(JTextComponent component) {
+        this(component, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity número de linhas no buffer; arredondado para a próxima
+     * potência de 2
+     */
+    public ConsoleSink(JTextComponent component, int capacity) {
+        int c = Integer.highestOneBit(Math.max(capacity, 2));
+        if (c < capacity) {
+            c <<= 1;
+        }
+        this.component = component;
+        ring = new AtomicReferenceArray<>(c);
+        mask = c - 1;
+    }
+
+    /**
+     * Define um arquivo para onde vão as linhas que não cabem no buffer, ou
+     * nenhum, se <code>file</code> for nulo.
+     */
+    public synchronized void setSpillFile(File file) throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+        if (file != null) {
+            spill = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"), true);
+        }
+    }
+
+    /**
+     * Acrescenta uma linha ao console. Pode ser chamado por qualquer thread.
+     */
+    public void print(String str) {
+        if (str == null) {
+            str = "null";
+        }
+        long deadline = 0;
+        while (true) {
+            long t = tail.get();
+            if (t - head < ring.length()) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    ring.set((int) (t & mask), str);
+                    break;
+                }
+                continue;
+            }
+
+            //buffer cheio
+            if (spill(str)) {
+                return;
+            }
+            if (SwingUtilities.isEventDispatchThread()) {
+                //a thread do Swing não pode esperar por ela mesma
+                drain();
+                continue;
+            }
+            long now = System.nanoTime();
+            if (deadline == 0) {
+                deadline = now + TimeUnit.MILLISECONDS.toNanos(MAX_WAIT);
+                waits.incrementAndGet();
+                schedule();
+            } else if (now - deadline > 0) {
+                dropped.incrementAndGet();
+                schedule();
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        schedule();
+    }
+
+    private synchronized boolean spill(String str) {
+        if (spill == null) {
+            return false;
+        }
+        spill.println(str);
+        spilled.incrementAndGet();
+        return true;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            Scheduler.schedule(post, FRAME_DELAY);
+        }
+    }
+
+    /**
+     * Número de vezes que alguém esperou por espaço no buffer.
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * Número de linhas gravadas no arquivo de registro por falta de espaço.
+     */
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * Número de linhas perdidas porque o console não foi esvaziado a tempo.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Número de linhas esperando para serem mostradas.
+     */
+    public int getPending() {
+        return (int) (tail.get() - head);
+    }
+
+    /**
+     * Move até {@link #MAX_LINES_PER_FRAME} linhas do buffer para o
+     * componente. Deve ser chamado pela thread do Swing.
+     */
+    private void drain() {
+        scheduled.set(false);
+        Document doc = component.getDocument();
+        text.setLength(0);
+        boolean empty = doc.getLength() == 0;
+
+        long s = spilled.get();
+        long d = dropped.get();
+        if (s != reportedSpilled || d != reportedDropped) {
+            empty = append("(" + (s - reportedSpilled) + " linhas gravadas no registro, "
+                    + (d - reportedDropped) + " linhas perdidas)", empty);
+            reportedSpilled = s;
+            reportedDropped = d;
+        }
+
+        long h = head;
+        int n = 0;
+        while (n < MAX_LINES_PER_FRAME) {
+            int i = (int) (h & mask);
+            String str = ring.get(i);
+            if (str == null) {
+                //vazio, ou a posição foi reservada e ainda não escrita
+                break;
+            }
+            ring.set(i, null);
+            h++;
+            head = h;
+            empty = append(str, empty);
+            n++;
+        }
+
+        if (text.length() > 0) {
+            try {
+                doc.insertString(doc.getLength(), text.toString(), null);
+                int excess = doc.getLength() - MAX_DOCUMENT_LENGTH;
+                if (excess > 0) {
+                    doc.remove(0, excess);
+                }
+            } catch (BadLocationException ex) {
+            }
+            component.setCaretPosition(doc.getLength());
+        }
+
+        if (tail.get() != head) {
+            schedule();
+        }
+    }
+
+    private boolean append(String str, boolean empty) {
+        if (!empty) {
+            text.append('\n');
+        }
+        text.append(str);
+        return false;
+    }
+}
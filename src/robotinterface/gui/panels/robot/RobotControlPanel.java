@@ -28,6 +28,7 @@ import robotinterface.robot.device.HBridge;
 import robotinterface.robot.device.IRProximitySensor;
 import robotinterface.robot.device.ReflectanceSensorArray;
 import robotinterface.robot.simulation.VirtualConnection;
+import robotinterface.util.Scheduler;
 
 /**
  *
@@ -174,19 +175,13 @@ public class RobotControlPanel extends JPanel {
         statusLabel2.setText("");
         statusLabel3.setText("");
 
-        new Thread("Repaint Thread- " + Thread.activeCount()) {
+        Scheduler.execute(new Runnable() {
             @Override
             public void run() {
-                try {
-                    while (true) {
-                        connectionStatusGraph.repaint();
-                        Thread.sleep(500);
-                    }
-                } catch (InterruptedException ex) {
-                }
-
+                connectionStatusGraph.repaint();
+                Scheduler.schedule(this, 500);
             }
-        }.start();
+        });
 
         MouseListener ml = new MouseListener() {
             @Override
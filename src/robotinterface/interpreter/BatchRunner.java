@@ -0,0 +1,405 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.interpreter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import robotinterface.algorithm.parser.Parser;
+import robotinterface.algorithm.procedure.Function;
+import robotinterface.robot.Robot;
+import robotinterface.robot.device.Compass;
+import robotinterface.robot.device.HBridge;
+import robotinterface.robot.device.IRProximitySensor;
+import robotinterface.robot.device.ReflectanceSensorArray;
+import robotinterface.robot.simulation.Environment;
+import robotinterface.robot.simulation.Simulation;
+import robotinterface.robot.simulation.VirtualConnection;
+import robotinterface.util.trafficsimulator.Clock;
+import robotinterface.util.trafficsimulator.Timer;
+
+/**
+ * Executa vários programas (<code>.func</code>) em vários ambientes
+ * (<code>.env</code>) sem interface gráfica e gera uma tabela CSV com o
+ * resultado de cada par.
+ * <p>
+ * Cada par roda em uma thread do conjunto, com o seu próprio robô virtual,
+ * conexão, interpretador e simulação; os ambientes são carregados uma única
+ * vez e compartilhados, pois a simulação apenas os consulta. A física avança
+ * junto com o relógio simulado do interpretador, então o resultado não
+ * depende da velocidade da máquina.
+ * <p>
+ * Uso:
+ * <pre>
+ * BatchRunner programas ambientes [-o saida.csv] [-t threads]
+ *             [-limit segundos] [-wall segundos] [-compiled]
+ * </pre>
+ * <code>programas</code> e <code>ambientes</code> podem ser arquivos ou
+ * diretórios. <code>-limit</code> é o tempo simulado máximo de cada execução
+ * e <code>-wall</code> o tempo real máximo, para programas que não esperam.
+ *
+ * @author antunes
+ */
+public final class BatchRunner {
+
+    public static final String PROGRAM_EXTENSION = ".func";
+    public static final String ENVIRONMENT_EXTENSION = ".env";
+    public static final double DEFAULT_TIME_LIMIT = 120;
+    public static final double DEFAULT_WALL_LIMIT = 60;
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_ERROR = "error";
+    public static final String STATUS_TIMEOUT = "timeout";
+    //o analisador usa o estado estático do editor
+    private static final Object DECODE_LOCK = new Object();
+    private static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+    private final List<File> programs = new ArrayList<>();
+    private final List<File> environmentFiles = new ArrayList<>();
+    private final List<Environment> environments = new ArrayList<>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private double timeLimit = DEFAULT_TIME_LIMIT;
+    private double wallLimit = DEFAULT_WALL_LIMIT;
+    private boolean compiled = false;
+
+    /**
+     * Resultado da execução de um programa em um ambiente.
+     */
+    public static class Result {
+
+        private final String program;
+        private final String environment;
+        private String status = STATUS_OK;
+        private double time;
+        private double pathLength;
+        private int collisions;
+
+        Result(String program, String environment) {
+            this.program = program;
+            this.environment = environment;
+        }
+
+        public String getProgram() {
+            return program;
+        }
+
+        public String getEnvironment() {
+            return environment;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * Tempo simulado até o fim do programa, em segundos.
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Comprimento do caminho percorrido, em unidades do ambiente.
+         */
+        public double getPathLength() {
+            return pathLength;
+        }
+
+        /**
+         * Número de vezes que o robô encostou em uma parede (e parou).
+         */
+        public int getCollisions() {
+            return collisions;
+        }
+
+        public static String header() {
+            return "program,environment,status,time_s,path_length,collisions";
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s,%s,%s,%.3f,%.2f,%d",
+                    csv(program), csv(environment), status, time, pathLength, collisions);
+        }
+
+        private static String csv(String str) {
+            if (str.contains(",") || str.contains("\"")) {
+                return "\"" + str.replace("\"", "\"\"") + "\"";
+            }
+            return str;
+        }
+    }
+
+    public void addProgram(File file) {
+        programs.add(file);
+    }
+
+    public void addEnvironment(File file) throws IOException {
+        Environment env = new Environment();
+        try (InputStream input = new FileInputStream(file)) {
+            env.loadFile(input);
+        }
+        environmentFiles.add(file);
+        environments.add(env);
+    }
+
+    public void setThreads(int threads) {
+        if (threads > 0) {
+            this.threads = threads;
+        }
+    }
+
+    /**
+     * @param timeLimit tempo simulado máximo de cada execução, em segundos
+     */
+    public void setTimeLimit(double timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * @param wallLimit tempo real máximo de cada execução, em segundos
+     */
+    public void setWallLimit(double wallLimit) {
+        this.wallLimit = wallLimit;
+    }
+
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * Executa todos os pares programa/ambiente e retorna os resultados na
+     * ordem em que os pares foram formados.
+     */
+    public List<Result> run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (final File program : programs) {
+                for (int i = 0; i < environments.size(); i++) {
+                    final File envFile = environmentFiles.get(i);
+                    final Environment env = environments.get(i);
+                    futures.add(pool.submit(new Callable<Result>() {
+                        @Override
+                        public Result call() {
+                            return run(program, envFile.getName(), env, watchdog);
+                        }
+                    }));
+                }
+            }
+            List<Result> results = new ArrayList<>(futures.size());
+            for (Future<Result> f : futures) {
+                try {
+                    results.add(f.get());
+                } catch (java.util.concurrent.ExecutionException ex) {
+                    //run() não lança exceções
+                    throw new IllegalStateException(ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    private Result run(File program, String envName, final Environment env, ScheduledExecutorService watchdog) {
+        Result result = new Result(program.getName(), envName);
+        Function main;
+        try (InputStream input = new FileInputStream(program)) {
+            synchronized (DECODE_LOCK) {
+                main = Parser.decode(input);
+            }
+        } catch (Throwable t) {
+            System.err.println(program.getName() + ": " + t.getMessage());
+            result.status = STATUS_ERROR;
+            return result;
+        }
+
+        final Robot robot = newRobot();
+        robot.setEnvironment(env);
+        VirtualConnection connection = new VirtualConnection();
+        connection.setRobot(robot);
+        robot.setMainConnection(connection);
+
+        final Interpreter interpreter = new Interpreter();
+        final Simulation simulation = new Simulation(Collections.singletonList(robot));
+        final Clock clock = interpreter.getClock();
+        final long limit = (long) (timeLimit * 1000);
+        final boolean[] timedOut = {false};
+
+        //a física acompanha o relógio simulado do interpretador
+        Timer physics = new Timer((long) (simulation.getTimestep() * 1000)) {
+            @Override
+            public void run() {
+                while (simulation.getTime() * 1000 < getTimeElapsed()) {
+                    simulation.step();
+                }
+                if (clock.getElapsedMilis() >= limit) {
+                    timedOut[0] = true;
+                    interpreter.cancel();
+                }
+            }
+        };
+        physics.setDisposable(false);
+
+        ScheduledFuture<?> wall = watchdog.schedule(new Runnable() {
+            @Override
+            public void run() {
+                timedOut[0] = true;
+                interpreter.cancel();
+            }
+        }, (long) (wallLimit * 1000), TimeUnit.MILLISECONDS);
+
+        try {
+            interpreter.setRobot(robot);
+            interpreter.setHeadless(true);
+            interpreter.setCompiled(compiled);
+            interpreter.setOutput(NULL_OUTPUT);
+            interpreter.setMainFunction(main);
+            clock.addTimer(physics);
+            boolean ok = interpreter.runHeadless();
+            robot.updateVirtualPerception();
+
+            if (timedOut[0]) {
+                result.status = STATUS_TIMEOUT;
+            } else if (!ok) {
+                result.status = STATUS_ERROR;
+            }
+            result.time = clock.getElapsedMilis() / 1000.0;
+            result.pathLength = robot.getPerception().getPathLength();
+            result.collisions = robot.getPerception().getCollisionCount();
+        } catch (Throwable t) {
+            System.err.println(program.getName() + ": " + t.getMessage());
+            result.status = STATUS_ERROR;
+        } finally {
+            wall.cancel(false);
+        }
+        return result;
+    }
+
+    /**
+     * Cria um robô com os mesmos dispositivos do painel de controle.
+     */
+    private static Robot newRobot() {
+        Robot robot = new Robot();
+        robot.add(new HBridge());
+        robot.add(new Compass());
+        robot.add(new IRProximitySensor());
+        robot.add(new ReflectanceSensorArray());
+        return robot;
+    }
+
+    private static void addFiles(List<File> list, File file, String extension) throws FileNotFoundException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files != null) {
+                Arrays.sort(files);
+                for (File f : files) {
+                    if (f.isFile() && f.getName().endsWith(extension)) {
+                        list.add(f);
+                    }
+                }
+            }
+        } else if (file.isFile()) {
+            list.add(file);
+        } else {
+            throw new FileNotFoundException(file.getPath());
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Uso: BatchRunner programas ambientes [-o saida.csv] [-t threads]"
+                + " [-limit segundos] [-wall segundos] [-compiled]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        List<String> paths = new ArrayList<>();
+        String output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-o":
+                        output = args[++i];
+                        break;
+                    case "-t":
+                        runner.setThreads(Integer.parseInt(args[++i]));
+                        break;
+                    case "-limit":
+                        runner.setTimeLimit(Double.parseDouble(args[++i]));
+                        break;
+                    case "-wall":
+                        runner.setWallLimit(Double.parseDouble(args[++i]));
+                        break;
+                    case "-compiled":
+                        runner.setCompiled(true);
+                        break;
+                    default:
+                        paths.add(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            usage();
+        }
+        if (paths.size() != 2) {
+            usage();
+        }
+
+        PrintStream out = System.out;
+        try {
+            List<File> files = new ArrayList<>();
+            addFiles(runner.programs, new File(paths.get(0)), PROGRAM_EXTENSION);
+            addFiles(files, new File(paths.get(1)), ENVIRONMENT_EXTENSION);
+            for (File f : files) {
+                runner.addEnvironment(f);
+            }
+
+            List<Result> results = runner.run();
+
+            if (output != null) {
+                out = new PrintStream(new FileOutputStream(output), false, "UTF-8");
+            }
+            out.println(Result.header());
+            for (Result r : results) {
+                out.println(r);
+            }
+            out.flush();
+        } catch (IOException | InterruptedException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+        System.exit(0);
+    }
+}
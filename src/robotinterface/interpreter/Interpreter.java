@@ -25,21 +25,28 @@
  */
 package robotinterface.interpreter;
 
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 import robotinterface.algorithm.Command;
+import robotinterface.algorithm.procedure.Block;
+import robotinterface.algorithm.procedure.BreakLoop;
+import robotinterface.algorithm.procedure.Comment;
+import robotinterface.algorithm.procedure.DummyBlock;
 import robotinterface.algorithm.procedure.Function;
 import robotinterface.algorithm.procedure.If;
 import robotinterface.algorithm.procedure.While;
 import robotinterface.algorithm.procedure.Procedure;
 import org.nfunk.jep.JEP;
 import org.nfunk.jep.SymbolTable;
-import robotinterface.algorithm.parser.Parser;
-import robotinterface.drawable.util.QuickFrame;
 import robotinterface.gui.GUI;
-import robotinterface.gui.panels.SimulationPanel;
+import robotinterface.interpreter.compiler.CompilationException;
+import robotinterface.interpreter.compiler.CompiledFunction;
+import robotinterface.interpreter.compiler.FunctionCompiler;
 import robotinterface.plugin.cmdpack.begginer.Move;
 import robotinterface.plugin.cmdpack.begginer.ReadDevice;
 import robotinterface.plugin.cmdpack.begginer.Wait;
@@ -47,18 +54,31 @@ import robotinterface.plugin.cmdpack.util.PrintString;
 import robotinterface.robot.Robot;
 import robotinterface.robot.device.Compass;
 import robotinterface.robot.device.HBridge;
-import robotinterface.robot.connection.Serial;
+import robotinterface.robot.connection.Connection;
+import robotinterface.robot.connection.message.Message;
 import robotinterface.robot.device.Device;
+import robotinterface.util.Scheduler;
 import robotinterface.util.trafficsimulator.Clock;
 
 /**
  * Classe responsável por interpretar os algoritmos e executar os comandos.
+ * <p>
+ * O interpretador não tem uma thread própria: enquanto está executando, cada
+ * avanço é uma tarefa curta no {@link Scheduler} compartilhado, agendada de
+ * novo quando o comando atual termina, quando uma resposta do robô chega ou
+ * depois de {@link #POLL_INTERVAL} milissegundos. Parado, não ocupa nenhuma
+ * thread.
  */
-public class Interpreter extends Thread {
+public class Interpreter {
 
     public static final int STOP = 0;
     public static final int PLAY = 1;
     public static final int WAITING = 2;
+    //tempo simulado (ms) que avança a cada espera, e no mínimo a cada comando
+    //do robô, no modo sem interface
+    public static final int HEADLESS_TIMESTEP = 5;
+    //intervalo máximo (ms) entre verificações de um comando em andamento
+    public static final int POLL_INTERVAL = 5;
     private Clock clock;
     private JEP parser;
     private Robot robot;
@@ -66,12 +86,37 @@ public class Interpreter extends Thread {
     private Function mainFunction;
     private Command currentCmd = null;
     private Command errorCmd = null;
-    private int state;
+    private volatile int state;
     private int timestep = 0;
     private boolean running = false;
+    private final Object runningLock = new Object();
+    //comando cujo begin() já foi executado e que ainda não terminou
+    private Command pendingCmd = null;
+    private boolean moveDisabled = false;
+    private int pauseTicks = 0;
+    private long pauseInterval = 0;
+    //agendamento do próximo avanço, protegido por tickLock
+    private final Object tickLock = new Object();
+    private boolean active = false;
+    private ScheduledFuture<?> nextTick = null;
+    private final Runnable tickTask = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+        }
+    };
+    private final Runnable wakeTask = new Runnable() {
+        @Override
+        public void run() {
+            wake();
+        }
+    };
+    private boolean headless = false;
+    private boolean compiled = false;
+    private boolean lastRunCompiled = false;
+    private PrintStream output = System.out;
 
     public Interpreter() {
-        super("Interpreter");
         parser = new JEP();
         parser.addFunction("get", new Get());
         clock = new Clock();
@@ -84,13 +129,28 @@ public class Interpreter extends Thread {
         state = STOP;
     }
 
+    public Clock getClock() {
+        return clock;
+    }
+
     public Robot getRobot() {
         return robot;
     }
 
     public void setRobot(Robot robot) {
+        if (this.robot != null) {
+            this.robot.removeReadListener(wakeTask);
+            if (this.robot.getClock() == clock) {
+                this.robot.setClock(null);
+            }
+        }
         this.robot = robot;
         resourceManager.setResource(robot);
+        if (robot != null) {
+            robot.addReadListener(wakeTask);
+            //os tempos limite das mensagens seguem o relógio do programa
+            robot.setClock(clock);
+        }
     }
 
     public void reset() {
@@ -101,7 +161,8 @@ public class Interpreter extends Thread {
         }
 
         state = STOP;
-        running = false;
+        pendingCmd = null;
+        setRunning(false);
 
         parser.initFunTab(); // clear the contents of the function table
         parser.addStandardFunctions();
@@ -130,12 +191,77 @@ public class Interpreter extends Thread {
         reset();
     }
 
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Define se o interpretador deve executar sem interface gráfica. Nesse
+     * modo não há esperas em tempo real: o tempo avança apenas no relógio
+     * simulado e as mensagens são escritas na saída definida em
+     * {@link #setOutput(PrintStream)}.
+     *
+     * @param headless true para executar sem interface gráfica
+     */
+    public void setHeadless(boolean headless) {
+        this.headless = headless;
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Define se {@link #runHeadless()} deve tentar compilar a função
+     * principal para bytecode antes de executá-la. Funções que o
+     * {@link FunctionCompiler} não suporta continuam sendo interpretadas.
+     *
+     * @param compiled true para habilitar a compilação
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * Informa se a última chamada de {@link #runHeadless()} executou a função
+     * compilada, ou se ela foi interpretada (compilação desabilitada ou não
+     * suportada).
+     */
+    public boolean isLastRunCompiled() {
+        return lastRunCompiled;
+    }
+
+    public void setOutput(PrintStream output) {
+        this.output = output;
+    }
+
+    public void print(String str) {
+        if (headless) {
+            output.println(str);
+        } else {
+            GUI.print(str);
+        }
+    }
+
+    private void setRunning(boolean running) {
+        synchronized (runningLock) {
+            this.running = running;
+            runningLock.notifyAll();
+        }
+    }
+
     public void setInterpreterState(int state) {
         this.state = state;
+        if (state == PLAY) {
+            activate();
+        } else {
+            //o próximo avanço percebe a mudança e termina
+            wake();
+        }
 
         final int tmpState = state;
 
-        new Thread() {
+        Scheduler.execute(new Runnable() {
 
             @Override
             public void run() {
@@ -143,10 +269,12 @@ public class Interpreter extends Thread {
                 if (tmpState != PLAY) {
                     if (robot != null) {
                         robot.stop();
-                        while (running) {
-                            try {
-                                Thread.sleep(100);
-                            } catch (InterruptedException ex) {
+                        synchronized (runningLock) {
+                            while (running) {
+                                try {
+                                    runningLock.wait();
+                                } catch (InterruptedException ex) {
+                                }
                             }
                         }
                         robot.stopAll();
@@ -160,10 +288,22 @@ public class Interpreter extends Thread {
                     }
                 }
 
-                GUI.getInstance().updateControlBar(Interpreter.this);
+                if (!headless) {
+                    GUI.getInstance().updateControlBar(Interpreter.this);
+                }
             }
 
-        }.start();
+        });
+    }
+
+    /**
+     * Interrompe a execução iniciada por {@link #runHeadless()} assim que o
+     * comando atual terminar ou entrar em espera. Pode ser chamado de
+     * qualquer thread.
+     */
+    public void cancel() {
+        state = STOP;
+        wake();
     }
 
     public int getInterpreterState() {
@@ -188,7 +328,9 @@ public class Interpreter extends Thread {
 
     public boolean step() {
         if (currentCmd == null) {
-            GUI.print(" > FIM < ");
+            if (!headless) {
+                GUI.print(" > FIM < ");
+            }
             return false;
         }
 
@@ -196,214 +338,314 @@ public class Interpreter extends Thread {
 
         //System.out.println(currentCmd); //exibe o comando atual
         try {
-            currentCmd.begin(resourceManager);
-            while (!currentCmd.perform(resourceManager)) {
-                clock.increase();
-                try {
-                    Thread.sleep(5);
-                } catch (InterruptedException ex) {
-                }
-                if (state == STOP) {
-                    return false;
-                }
+            if (!execute(currentCmd)) {
+                return false;
             }
             currentCmd = currentCmd.step(resourceManager);
 
         } catch (ForceInterruptionException e) {
             return false;
         } catch (ExecutionException e) {
-            //GUI.print("Erro: " + e.getMessage());
-            errorCmd = currentCmd;
-            String msg = "Houve um problema ao executar o código atual.\nO bloco que originou o erro foi destacado.\nFavor corrigir e tentar novamente.";
-            String ObjButtons[] = {"Continuar", "Mais detalhes"};
-            int PromptResult = JOptionPane.showOptionDialog(null, msg, "Erro", JOptionPane.NO_OPTION, JOptionPane.ERROR_MESSAGE, null, ObjButtons, ObjButtons[1]);
-            if (PromptResult == JOptionPane.NO_OPTION) {
-                JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
-                e.printStackTrace();
-            }
-            System.err.println(e.getMessage());
+            error(e);
             return false;
         }
         return true;
     }
 
-    @Override
-    public void run() {
+    /**
+     * Quanto o relógio avança, sem interface gráfica, enquanto o comando não
+     * termina: até o próximo temporizador, se o comando só depende deles, ou
+     * {@link #HEADLESS_TIMESTEP} milissegundos.
+     */
+    private long headlessStep(Command cmd) {
+        if (cmd.isClockBound()) {
+            long next = clock.getTimeToNextTimer();
+            if (next >= 0) {
+                return Math.max(next, 1);
+            }
+        }
+        return HEADLESS_TIMESTEP;
+    }
+
+    private void error(ExecutionException e) {
+        //GUI.print("Erro: " + e.getMessage());
+        errorCmd = currentCmd;
+        if (headless) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        String msg = "Houve um problema ao executar o código atual.\nO bloco que originou o erro foi destacado.\nFavor corrigir e tentar novamente.";
+        String ObjButtons[] = {"Continuar", "Mais detalhes"};
+        int PromptResult = JOptionPane.showOptionDialog(null, msg, "Erro", JOptionPane.NO_OPTION, JOptionPane.ERROR_MESSAGE, null, ObjButtons, ObjButtons[1]);
+        if (PromptResult == JOptionPane.NO_OPTION) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+            e.printStackTrace();
+        }
+        System.err.println(e.getMessage());
+    }
+
+    /**
+     * Executa um único comando, esperando até que ele termine.
+     *
+     * @param cmd comando a ser executado
+     * @return false se o interpretador foi parado durante a execução
+     * @throws ExecutionException se o comando falhar
+     */
+    public boolean execute(Command cmd) throws ExecutionException {
+        //agrupa as mensagens enviadas ao robô em cada ciclo
+        Connection connection = (robot != null) ? robot.getMainConnection() : null;
+        if (connection != null) {
+            connection.setBatching(true);
+        }
+        long start = clock.getTime();
         try {
-            while (true) {
-                if (state == PLAY) {
-                    errorCmd = null;
-                    if (!step()) {
-                        state = STOP;
-                        reset();
-                        GUI.getInstance().updateControlBar(this);
+            cmd.begin(resourceManager);
+            flush(connection);
+            long reads = Message.getReadCount();
+            while (!perform(cmd, connection)) {
+                if (headless) {
+                    clock.advance(headlessStep(cmd));
+                } else {
+                    clock.increase();
+                    try {
+                        //acorda assim que uma resposta do robô chegar
+                        Message.waitAnyRead(reads, 5);
+                    } catch (InterruptedException ex) {
                     }
+                    reads = Message.getReadCount();
+                }
+                if (state == STOP) {
+                    return false;
+                }
+            }
+            if (headless && takesTime(cmd)) {
+                //sem interface, um comando que termina na hora (um move ou
+                //um read na conexão virtual) não deixaria a simulação andar
+                long spent = clock.getTime() - start;
+                if (spent < HEADLESS_TIMESTEP) {
+                    clock.advance(HEADLESS_TIMESTEP - spent);
+                }
+            }
+        } finally {
+            if (connection != null) {
+                connection.setBatching(false);
+            }
+        }
+        return true;
+    }
 
-                    if (currentCmd != null && currentCmd.getDrawableResource() != null) {
-                        robot.disableMove(true);
-                        if (timestep > 50 && Robot.UPDATE_ALL_DEVICES.getTimeout() <= 50) {
-                            for (int i = 0; i < timestep; i += 50) {
-                                robot.updatePerception();
-                                Thread.sleep(50 - Robot.UPDATE_ALL_DEVICES.getTimeout());
-                            }
-                        } else {
-                            Thread.sleep(timestep);
-                        }
-                        robot.disableMove(false);
+    /**
+     * Verifica se o comando gasta tempo simulado quando executado sem
+     * interface gráfica: os mesmos comandos que o {@link FunctionCompiler}
+     * deixa para o interpretador, ou seja, tudo que não é estrutura do
+     * fluxograma ou expressão.
+     */
+    private static boolean takesTime(Command cmd) {
+        return !(cmd instanceof Block || cmd instanceof Block.BlockEnd || cmd instanceof If
+                || cmd instanceof BreakLoop || cmd instanceof Comment || cmd instanceof DummyBlock
+                || cmd.getClass() == Procedure.class);
+    }
+
+    private boolean perform(Command cmd, Connection connection) throws ExecutionException {
+        boolean done = cmd.perform(resourceManager);
+        flush(connection);
+        return done;
+    }
+
+    private void flush(Connection connection) {
+        if (connection != null) {
+            //envia as mensagens do ciclo em um único pacote
+            connection.flush();
+        }
+    }
+
+    /**
+     * Agenda o primeiro avanço, se o interpretador ainda não está ativo.
+     */
+    private void activate() {
+        synchronized (tickLock) {
+            if (!active) {
+                active = true;
+                nextTick = Scheduler.schedule(tickTask, 0);
+            }
+        }
+    }
+
+    /**
+     * Antecipa o próximo avanço, se ele estiver esperando.
+     */
+    private void wake() {
+        synchronized (tickLock) {
+            if (nextTick != null && nextTick.getDelay(TimeUnit.MILLISECONDS) > 0 && nextTick.cancel(false)) {
+                nextTick = Scheduler.schedule(tickTask, 0);
+            }
+        }
+    }
+
+    private void tick() {
+        long delay;
+        try {
+            delay = advance();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            state = STOP;
+            delay = -1;
+        }
+        synchronized (tickLock) {
+            if (delay < 0 && state == PLAY) {
+                //PLAY pedido enquanto este avanço terminava
+                delay = 0;
+            }
+            if (delay >= 0) {
+                nextTick = Scheduler.schedule(tickTask, delay);
+                return;
+            }
+            nextTick = null;
+            active = false;
+        }
+        setRunning(false);
+    }
+
+    /**
+     * Avança a execução sem bloquear: inicia o comando atual, verifica se
+     * ele terminou e passa para o próximo.
+     *
+     * @return tempo em milissegundos até o próximo avanço, ou -1 se a
+     * execução parou
+     */
+    private long advance() {
+        if (moveDisabled) {
+            //pausa para exibir o bloco atual
+            if (pauseTicks > 0 && state == PLAY) {
+                pauseTicks--;
+                robot.updatePerception();
+                return pauseInterval;
+            }
+            robot.disableMove(false);
+            moveDisabled = false;
+        }
+
+        if (pendingCmd == null) {
+            if (state != PLAY) {
+                return -1;
+            }
+            errorCmd = null;
+            setRunning(true);
+            if (currentCmd == null) {
+                if (!headless) {
+                    GUI.print(" > FIM < ");
+                }
+                finish();
+                return -1;
+            }
+            clock.setPaused(false);
+        } else if (state == STOP) {
+            return -1;
+        }
+
+        Connection connection = (robot != null) ? robot.getMainConnection() : null;
+        if (connection != null) {
+            connection.setBatching(true);
+        }
+        try {
+            if (pendingCmd == null) {
+                pendingCmd = currentCmd;
+                pendingCmd.begin(resourceManager);
+                flush(connection);
+            }
+            if (!perform(pendingCmd, connection)) {
+                clock.increase();
+                if (pendingCmd.isClockBound()) {
+                    //dorme até o próximo temporizador vencer
+                    long next = clock.getTimeToNextTimer();
+                    if (next >= 0) {
+                        return clock.toRealTime(next);
                     }
-                    running = true;
-                } else {
-                    running = false;
-                    Thread.sleep(100);
                 }
+                return POLL_INTERVAL;
+            }
+            pendingCmd = null;
+            currentCmd = currentCmd.step(resourceManager);
+        } catch (ForceInterruptionException e) {
+            finish();
+            return -1;
+        } catch (ExecutionException e) {
+            error(e);
+            finish();
+            return -1;
+        } finally {
+            if (connection != null) {
+                connection.setBatching(false);
             }
-        } catch (InterruptedException ex) {
-            ex.printStackTrace();
         }
-    }
 
-    public static void main(String[] args) {
+        if (!headless && timestep > 0 && currentCmd != null && currentCmd.getDrawableResource() != null) {
+            robot.disableMove(true);
+            moveDisabled = true;
+            long updateTimeout = robot.getUpdateAllDevicesAction().getTimeout();
+            if (timestep > 50 && updateTimeout <= 50) {
+                //atualiza os sensores durante a pausa
+                pauseTicks = (timestep + 49) / 50;
+                pauseInterval = 50 - updateTimeout;
+                return 0;
+            }
+            pauseTicks = 0;
+            return timestep;
+        }
+        return 0;
+    }
 
-        Robot r = new Robot();
-        r.add(new HBridge());
-        r.add(new Compass());
-        r.add(new Serial(57600));
-        Interpreter i = new Interpreter();
-        i.setRobot(r);
-
-//        f.add(new Cmd("a"));
-//        f.add(new Cmd("b"));
-//        If fi = new If();
-//        fi.addTrue(new Cmd("c"));
-//        fi.addFalse(new Cmd("d"));
-//        f.add(fi);
-//        
-//        Loop l1 = new Loop("l1");
-//        
-//        l1.add(new Cmd("e"));
-//        Loop l2 = new Loop("l2");
-//        l2.add(new Cmd("f"));
-//        l2.add(new Cmd("g"));
-//        l2.add(new Cmd("h"));
-//        l1.add(l2);
-//        l1.add(new Cmd("i"));
-//        
-//        f.add(l1);
-//        f.add(new Cmd("j"));
-//        i.setMainFunction(f);
-//        
-//        
-//        l1.addAfter(new Cmd("j0"));
-//        l1.addBefore(new Cmd("e0"));
-//        f.add(new Start());
-//
-//        Loop l = new Loop();
-//        l.add(new Move(80, 80));
-//        l.add(new Move(0, 0));
-//        l.add(new Move(50, -50));
-//        l.add(new Move(0, 0));
-//        l.add(new Move(-80, -80));
-//        l.add(new Move(0, 0));
-//        f.add(l);
-//        f.add(new Stop());
-//        i.setMainFunction(f);
-//        Function func = new Function("main", null);
-//        func.add(new PrintString("inicio"));
-//        func.add(new Declaration("i", 3));
-//        While l = new While("i > 0");
-//        l.add(new Declaration("j", 512));
-//        If ii = new If("i == 2");
-//        ii.addTrue(new PrintString("true"));
-//        ii.addFalse(new PrintString("false"));
-//        l.add(ii);
-//        l.add(new PrintString("valor de i = %v","i"));
-//        l.add(new Wait(501));
-//        l.add(new Procedure("i=i-1"));
-//        l.add(new PrintString("%v","j"));
-//        func.add(l);
-//        func.add(new PrintString("v = %v","j"));
-//        func.add(new PrintString("fim"));
-//        i.setMainFunction(func);
-        ArrayList<Class<? extends Device>> aw = new ArrayList<>();
-        aw.add(HBridge.class);
-        aw.add(Compass.class);
+    private void finish() {
+        state = STOP;
+        reset();
+        if (!headless) {
+            GUI.getInstance().updateControlBar(this);
+        }
+    }
 
-        Function func = new Function("main", null);
-//        func.add(new Wait(1000));
-//        func.add(new PrintString("inicio"));
-//        func.add(new Start());
-//        func.add(new Declaration("i", 10));
-//        func.add(new PrintString("Girando %v vezes...", "i"));
-//        While loop = new While("i > 0");
-//        loop.add(new Move(70, 70)); //move
-//        loop.add(new Wait(500));
-//        loop.add(new Move(-70, 70)); //gira
-//        loop.add(new Wait(500));
-//        loop.add(new Move(0, 0)); //para
-//        loop.add(new Wait(500));
-//        loop.add(new PrintString("Falta mais %v passo(s)...", "i"));
-//        loop.add(new Procedure("i = i - 1"));
-//        func.add(loop);
-//        func.add(new PrintString("Procurando angulo 100"));
-//        func.add(new Wait(500));
-//        func.add(new Declaration("alpha", 10));
-//        While loopCompass = new While("alpha != 100");// vai até 100
-//        If ifCompass = new If("alpha > 100");
-//        ifCompass.addTrue(new Move(55, -55));
-//        ifCompass.addTrue(new PrintString("Girando para a esquerda"));
-//        ifCompass.addFalse(new Move(-55, 55));
-//        ifCompass.addFalse(new PrintString("Girando para a direita"));
-//        loopCompass.add(ifCompass);
-//        loopCompass.add(new ReadDevice(Compass.class, "alpha"));
-//        loopCompass.add(new PrintString("Angulo atual: %v", "alpha"));
-//        func.add(loopCompass);
-//        func.add(new Move(0, 0));
-//        func.add(new ReadDevice(aw));
-//        func.add(new BlockRoboF(aw));
-//        //func.add(new ReadDevice(Compass.class, "alpha"));
-//        func.add(new PrintString("Angulo final: %v", "alpha"));
-//        func.add(new PrintString("fim"));
-//        func.add(new Declaration("i", new Vector<Object>(Arrays.asList(new Double[]{1.2,3.4}))));
-
-//        func.add(new PrintString("inicio"));
-//        func.add(new FunctionBlock(bubbleSort(10, false)));
-//        func.add(new PrintString("fim"));
-        func = newTestFunction();
-        i.setMainFunction(func);
-
-//        DrawingPanel p = new DrawingPanel();
-//        p.add((Drawable) func);
-//        boolean singleIdent = true;
-//        func.ident(0, 0, 40, 100, 0, 1, singleIdent);
-//        func.wire(40, 100, 0, 1, singleIdent);
-//        QuickFrame.create(p, "Teste do painel de desenho").addComponentListener(p);
-//        func.appendDCommandsOn(p);
-//        System.out.println(Function.getBounds(ifCompass, null, 10, 100, 1, 1, true));
-//        System.out.println(Function.getBounds(new Wait(1), null, 10,10,0));
-        SimulationPanel p = new SimulationPanel();
-        p.addRobot(r);
-        r.setEnvironment(p.getEnv());
-        QuickFrame.create(p, "Teste Simulação").addComponentListener(p);
-
-        //executa
-        while (i.step()) {
-//            try {
-//                Thread.sleep(100);
-//            } catch (InterruptedException ex) {
-//            }
+    /**
+     * Executa a função principal até o fim no modo sem interface gráfica.
+     *
+     * @return true se a execução terminou sem erros
+     */
+    public boolean runHeadless() {
+        setHeadless(true);
+        errorCmd = null;
+        state = PLAY;
+        lastRunCompiled = false;
+        if (compiled && currentCmd == mainFunction && mainFunction != null) {
+            try {
+                CompiledFunction cf = FunctionCompiler.compile(mainFunction);
+                clock.setPaused(false);
+                lastRunCompiled = true;
+                cf.run(resourceManager);
+                currentCmd = null;
+                state = STOP;
+                return true;
+            } catch (CompilationException e) {
+                //não suportado pelo compilador: interpreta normalmente
+                lastRunCompiled = false;
+            } catch (ForceInterruptionException e) {
+                state = STOP;
+                return true;
+            } catch (ExecutionException e) {
+                System.err.println(e.getMessage());
+                errorCmd = mainFunction;
+                state = STOP;
+                return false;
+            }
+        }
+        while (state != STOP && step()) {
         }
+        state = STOP;
+        return errorCmd == null;
+    }
 
-//        i.reset();
-//        
-//        while (i.step()) {
-////            try {
-////                Thread.sleep(100);
-////            } catch (InterruptedException ex) {
-////            }
-//        }
-        System.out.println(Parser.encode(func));
-
-//        System.exit(0);
+    /**
+     * Executa o corretor em lote; veja {@link BatchRunner}.
+     */
+    public static void main(String[] args) {
+        BatchRunner.main(args);
     }
 
     public static Function bubbleSort(int size, boolean rand) {
@@ -0,0 +1,317 @@
+/**
+ * @file .java
+ * @author Anderson Antunes <anderson.utf@gmail.com>
+ *         *seu nome* <*seu email*>
+ * @version 1.0
+ *
+ * @section LICENSE
+ *
+ * Copyright (C) 2013 by Anderson Antunes <anderson.utf@gmail.com>
+ *                       *seu nome* <*seu email*>
+ *
+ * RobotInterface is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * RobotInterface is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * RobotInterface. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package robotinterface.interpreter.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Gerador mínimo de arquivos .class usado pelo {@link FunctionCompiler}.
+ *
+ * Gera uma classe com o construtor padrão e um único método, usando a versão
+ * 49 do formato (Java 5), que dispensa o atributo StackMapTable. Só são
+ * suportadas as instruções usadas pelo compilador.
+ */
+final class ClassWriter {
+
+    static final int DCONST_0 = 0x0e;
+    static final int DCONST_1 = 0x0f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DDIV = 0x6f;
+    static final int DREM = 0x73;
+    static final int DNEG = 0x77;
+    static final int DUP2 = 0x5c;
+    static final int POP2 = 0x58;
+    static final int IFEQ = 0x99;
+    static final int GOTO = 0xa7;
+    static final int RETURN = 0xb1;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int DSTORE = 0x39;
+    private static final int DALOAD = 0x31;
+    private static final int DASTORE = 0x52;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final HashMap<String, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+    private final ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+    private final ArrayList<Integer> labels = new ArrayList<>();
+    private final ArrayList<int[]> jumps = new ArrayList<>();
+    private int stack = 0;
+    private int maxStack = 0;
+
+    private int constant(String key, int tag, Object... values) {
+        Integer index = poolIndex.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            pool.writeByte(tag);
+            for (Object o : values) {
+                if (o instanceof String) {
+                    pool.writeUTF((String) o);
+                } else if (o instanceof Double) {
+                    pool.writeDouble((Double) o);
+                } else {
+                    pool.writeShort((Integer) o);
+                }
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        index = poolSize;
+        //double ocupa duas posições na tabela de constantes
+        poolSize += (tag == 6) ? 2 : 1;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private int utf8(String s) {
+        return constant("U" + s, 1, s);
+    }
+
+    private int classRef(String name) {
+        return constant("C" + name, 7, utf8(name));
+    }
+
+    private int methodRef(String owner, String name, String desc) {
+        int nat = constant("N" + name + desc, 12, utf8(name), utf8(desc));
+        return constant("M" + owner + "." + name + desc, 10, classRef(owner), nat);
+    }
+
+    private void emit(int b) {
+        codeBytes.write(b);
+    }
+
+    private void emitShort(int s) {
+        codeBytes.write(s >> 8);
+        codeBytes.write(s);
+    }
+
+    private void push(int delta) {
+        stack += delta;
+        if (stack > maxStack) {
+            maxStack = stack;
+        }
+    }
+
+    void op(int opcode) {
+        emit(opcode);
+        switch (opcode) {
+            case DCONST_0:
+            case DCONST_1:
+            case DUP2:
+                push(2);
+                break;
+            case DADD:
+            case DSUB:
+            case DMUL:
+            case DDIV:
+            case DREM:
+            case POP2:
+                push(-2);
+                break;
+        }
+    }
+
+    void pushDouble(double v) {
+        if (Double.doubleToRawLongBits(v) == 0L) {
+            op(DCONST_0);
+        } else if (v == 1.0) {
+            op(DCONST_1);
+        } else {
+            emit(LDC2_W);
+            emitShort(constant("D" + Double.doubleToRawLongBits(v), 6, v));
+            push(2);
+        }
+    }
+
+    void pushInt(int v) {
+        emit(SIPUSH);
+        emitShort(v);
+        push(1);
+    }
+
+    void loadThis() {
+        emit(ALOAD_0);
+        push(1);
+    }
+
+    void loadArray() {
+        emit(ALOAD_1);
+        push(1);
+    }
+
+    private void local(int opcode, int slot) {
+        if (slot > 255) {
+            emit(WIDE);
+            emit(opcode);
+            emitShort(slot);
+        } else {
+            emit(opcode);
+            emit(slot);
+        }
+    }
+
+    void loadDouble(int slot) {
+        local(DLOAD, slot);
+        push(2);
+    }
+
+    void storeDouble(int slot) {
+        local(DSTORE, slot);
+        push(-2);
+    }
+
+    void loadArrayElement() {
+        emit(DALOAD);
+        push(0);
+    }
+
+    void storeArrayElement() {
+        emit(DASTORE);
+        push(-4);
+    }
+
+    void invokeStatic(String owner, String name, String desc, int delta) {
+        emit(INVOKESTATIC);
+        emitShort(methodRef(owner, name, desc));
+        push(delta);
+    }
+
+    void invokeVirtual(String owner, String name, String desc, int delta) {
+        emit(INVOKEVIRTUAL);
+        emitShort(methodRef(owner, name, desc));
+        push(delta);
+    }
+
+    int newLabel() {
+        labels.add(-1);
+        return labels.size() - 1;
+    }
+
+    void mark(int label) {
+        labels.set(label, codeBytes.size());
+    }
+
+    void jump(int opcode, int label) {
+        jumps.add(new int[]{codeBytes.size(), label});
+        emit(opcode);
+        emitShort(0);
+        if (opcode == IFEQ) {
+            push(-1);
+        }
+    }
+
+    byte[] toByteArray(String name, String superName, String method, String desc, int maxLocals) throws CompilationException {
+        byte[] code = codeBytes.toByteArray();
+        for (int[] jump : jumps) {
+            int offset = labels.get(jump[1]) - jump[0];
+            if (offset > Short.MAX_VALUE || offset < Short.MIN_VALUE) {
+                throw new CompilationException("Função muito grande para ser compilada");
+            }
+            code[jump[0] + 1] = (byte) (offset >> 8);
+            code[jump[0] + 2] = (byte) offset;
+        }
+        if (code.length > 65535 || maxLocals > 65535) {
+            throw new CompilationException("Função muito grande para ser compilada");
+        }
+
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int init = methodRef(superName, "<init>", "()V");
+        int codeAttr = utf8("Code");
+        int initName = utf8("<init>");
+        int initDesc = utf8("()V");
+        int methodName = utf8(method);
+        int methodDesc = utf8(desc);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolSize);
+            out.write(poolBytes.toByteArray());
+            //public final super
+            out.writeShort(0x0031);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(2);
+
+            //construtor padrão
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initDesc);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.writeByte(ALOAD_0);
+            out.writeByte(INVOKESPECIAL);
+            out.writeShort(init);
+            out.writeByte(RETURN);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            //método compilado (protected)
+            out.writeShort(0x0004);
+            out.writeShort(methodName);
+            out.writeShort(methodDesc);
+            out.writeShort(1);
+            out.writeShort(codeAttr);
+            out.writeInt(12 + code.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+}
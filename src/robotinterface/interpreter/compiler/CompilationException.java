@@ -0,0 +1,42 @@
+/**
+ * @file .java
+ * @author Anderson Antunes <anderson.utf@gmail.com>
+ *         *seu nome* <*seu email*>
+ * @version 1.0
+ *
+ * @section LICENSE
+ *
+ * Copyright (C) 2013 by Anderson Antunes <anderson.utf@gmail.com>
+ *                       *seu nome* <*seu email*>
+ *
+ * RobotInterface is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * RobotInterface is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * RobotInterface. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package robotinterface.interpreter.compiler;
+
+import robotinterface.interpreter.ExecutionException;
+
+/**
+ * Exceção lançada quando uma função não pode ser compilada, seja por usar
+ * comandos ou expressões não suportadas pelo {@link FunctionCompiler}, seja
+ * por depender de variáveis que não são numéricas.
+ */
+public class CompilationException extends ExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CompilationException(String e) {
+        super(e);
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * @file .java
+ * @author Anderson Antunes <anderson.utf@gmail.com>
+ *         *seu nome* <*seu email*>
+ * @version 1.0
+ *
+ * @section LICENSE
+ *
+ * Copyright (C) 2013 by Anderson Antunes <anderson.utf@gmail.com>
+ *                       *seu nome* <*seu email*>
+ *
+ * RobotInterface is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * RobotInterface is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * RobotInterface. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package robotinterface.interpreter.compiler;
+
+import org.nfunk.jep.JEP;
+import org.nfunk.jep.SymbolTable;
+import org.nfunk.jep.Variable;
+import robotinterface.algorithm.Command;
+import robotinterface.interpreter.ExecutionException;
+import robotinterface.interpreter.ForceInterruptionException;
+import robotinterface.interpreter.Interpreter;
+import robotinterface.interpreter.ResourceManager;
+
+/**
+ * Classe base das funções geradas pelo {@link FunctionCompiler}.
+ *
+ * As variáveis do fluxograma são mantidas em variáveis locais do método
+ * gerado e só são copiadas para a tabela de símbolos do JEP no início e no fim
+ * da execução, e em volta dos comandos que não podem ser compilados (Move,
+ * Wait, ReadDevice...). Esses comandos são executados pelo
+ * {@link Interpreter} através de {@link #call(int, double[])}.
+ *
+ * Como no interpretador, declarar uma variável que já existe é um erro, e as
+ * variáveis declaradas dentro de um bloco deixam de existir no fim dele; só
+ * as que existiam antes da execução e as declaradas no corpo da função ficam
+ * na tabela de símbolos depois dela.
+ */
+public abstract class CompiledFunction {
+
+    private String[] names;
+    private boolean[] declared;
+    //variáveis que existem no ponto atual da execução
+    private boolean[] live;
+    private Command[] commands;
+    private ResourceManager rm;
+    private Interpreter interpreter;
+    private SymbolTable symbolTable;
+
+    protected CompiledFunction() {
+    }
+
+    final void init(String[] names, boolean[] declared, Command[] commands) {
+        this.names = names;
+        this.declared = declared;
+        this.commands = commands;
+    }
+
+    /**
+     * Executa a função usando os recursos do interpretador (robô, relógio e
+     * tabela de símbolos).
+     *
+     * @param rm recursos do interpretador
+     * @throws CompilationException se alguma variável usada não for numérica;
+     * nesse caso nada foi executado
+     * @throws ExecutionException se algum comando falhar
+     */
+    public final void run(ResourceManager rm) throws ExecutionException {
+        this.rm = rm;
+        interpreter = rm.getResource(Interpreter.class);
+        JEP parser = rm.getResource(JEP.class);
+        symbolTable = parser.getSymbolTable();
+
+        double[] vars = new double[names.length];
+        live = new boolean[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Variable v = symbolTable.getVar(names[i]);
+            if (v != null && v.hasValidValue() && v.getValue() != null) {
+                if (!(v.getValue() instanceof Number)) {
+                    throw new CompilationException("A variável \"" + names[i] + "\" não é numérica");
+                }
+                vars[i] = ((Number) v.getValue()).doubleValue();
+                live[i] = true;
+            } else if (!declared[i]) {
+                throw new ExecutionException("Unrecognized symbol \"" + names[i] + "\"");
+            }
+        }
+
+        execute(vars);
+        store(vars);
+    }
+
+    /**
+     * Corpo da função, gerado pelo compilador.
+     *
+     * @param vars valores das variáveis, na ordem de {@link #names}
+     */
+    protected abstract void execute(double[] vars) throws ExecutionException;
+
+    /**
+     * Declara uma variável, como uma declaração <code>var</code>
+     * interpretada.
+     *
+     * @param slot índice da variável
+     * @throws ExecutionException se a variável já existe
+     */
+    protected final void declare(int slot) throws ExecutionException {
+        if (live[slot]) {
+            throw new ExecutionException("Variable already exists!");
+        }
+        live[slot] = true;
+    }
+
+    /**
+     * Remove uma variável declarada em um bloco, ao final dele.
+     *
+     * @param slot índice da variável
+     */
+    protected final void undeclare(int slot) {
+        live[slot] = false;
+    }
+
+    /**
+     * Executa um comando não compilado no interpretador.
+     *
+     * @param index índice do comando
+     * @param vars valores atuais das variáveis
+     */
+    protected final void call(int index, double[] vars) throws ExecutionException {
+        store(vars);
+        if (!interpreter.execute(commands[index])) {
+            throw new ForceInterruptionException();
+        }
+        for (int i = 0; i < names.length; i++) {
+            Variable v = symbolTable.getVar(names[i]);
+            if (v != null && v.hasValidValue() && v.getValue() != null) {
+                if (!(v.getValue() instanceof Number)) {
+                    throw new ExecutionException("A variável \"" + names[i] + "\" não é numérica");
+                }
+                vars[i] = ((Number) v.getValue()).doubleValue();
+                //o comando pode ter criado a variável
+                live[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Copia as variáveis existentes para a tabela de símbolos e invalida as
+     * que saíram de escopo, como faz o fim de um bloco interpretado.
+     */
+    private void store(double[] vars) {
+        for (int i = 0; i < names.length; i++) {
+            Variable v = symbolTable.getVar(names[i]);
+            if (live[i]) {
+                if (v == null) {
+                    symbolTable.makeVarIfNeeded(names[i], vars[i]);
+                } else {
+                    v.setValue(vars[i]);
+                }
+            } else if (v != null && v.hasValidValue()) {
+                v.setValidValue(false);
+            }
+        }
+    }
+
+    //operadores com a mesma semântica do JEP para valores reais
+    protected static double lt(double a, double b) {
+        return (a < b) ? 1 : 0;
+    }
+
+    protected static double le(double a, double b) {
+        return (a <= b) ? 1 : 0;
+    }
+
+    protected static double gt(double a, double b) {
+        return (a > b) ? 1 : 0;
+    }
+
+    protected static double ge(double a, double b) {
+        return (a >= b) ? 1 : 0;
+    }
+
+    protected static double eq(double a, double b) {
+        return (a == b) ? 1 : 0;
+    }
+
+    protected static double ne(double a, double b) {
+        return (a != b) ? 1 : 0;
+    }
+
+    protected static double and(double a, double b) {
+        return (a != 0 && b != 0) ? 1 : 0;
+    }
+
+    protected static double or(double a, double b) {
+        return (a != 0 || b != 0) ? 1 : 0;
+    }
+
+    protected static double not(double a) {
+        return (a == 0) ? 1 : 0;
+    }
+
+    //mesmo critério de Procedure.evaluate
+    protected static boolean isTrue(double d) {
+        return d != 0 && !Double.isNaN(d);
+    }
+}
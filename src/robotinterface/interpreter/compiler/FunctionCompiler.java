@@ -0,0 +1,446 @@
+/**
+ * @file .java
+ * @author Anderson Antunes <anderson.utf@gmail.com>
+ *         *seu nome* <*seu email*>
+ * @version 1.0
+ *
+ * @section LICENSE
+ *
+ * Copyright (C) 2013 by Anderson Antunes <anderson.utf@gmail.com>
+ *                       *seu nome* <*seu email*>
+ *
+ * RobotInterface is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * RobotInterface is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * RobotInterface. If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package robotinterface.interpreter.compiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import org.nfunk.jep.ASTConstant;
+import org.nfunk.jep.ASTFunNode;
+import org.nfunk.jep.ASTVarNode;
+import org.nfunk.jep.JEP;
+import org.nfunk.jep.Node;
+import org.nfunk.jep.Operator;
+import org.nfunk.jep.OperatorSet;
+import org.nfunk.jep.ParseException;
+import org.nfunk.jep.Variable;
+import robotinterface.algorithm.Command;
+import robotinterface.algorithm.procedure.Block;
+import robotinterface.algorithm.procedure.BreakLoop;
+import robotinterface.algorithm.procedure.Comment;
+import robotinterface.algorithm.procedure.DummyBlock;
+import robotinterface.algorithm.procedure.Function;
+import robotinterface.algorithm.procedure.If;
+import robotinterface.algorithm.procedure.Procedure;
+import robotinterface.algorithm.procedure.While;
+import robotinterface.interpreter.Get;
+import robotinterface.interpreter.ResourceManager;
+
+/**
+ * Compila uma {@link Function} para uma classe Java gerada em tempo de
+ * execução.
+ *
+ * Os blocos If, While e BreakLoop viram desvios no bytecode e as variáveis
+ * viram variáveis locais do tipo double. Só são aceitas expressões numéricas
+ * reais (operadores aritméticos, relacionais e lógicos, atribuição simples e
+ * algumas funções da classe {@link Math}); vetores, textos e números
+ * complexos fazem a compilação falhar com uma {@link CompilationException}, e
+ * nesse caso a função deve ser interpretada. A potência usa
+ * {@link Math#pow(double, double)}, que retorna NaN onde o JEP retornaria um
+ * número complexo.
+ *
+ * Os demais comandos (Move, Wait, PrintString...) são executados pelo
+ * interpretador a partir do código gerado.
+ */
+public final class FunctionCompiler {
+
+    private static final String BASE = "robotinterface/interpreter/compiler/CompiledFunction";
+    private static final String MATH = "java/lang/Math";
+    private static final String BINARY = "(DD)D";
+    private static final String UNARY = "(D)D";
+    private static final HashMap<String, String> FUNCTIONS = new HashMap<>();
+    private static int classCounter = 0;
+
+    static {
+        //apenas funções do JEP com resultado real para qualquer argumento real
+        FUNCTIONS.put("sin", UNARY);
+        FUNCTIONS.put("cos", UNARY);
+        FUNCTIONS.put("tan", UNARY);
+        FUNCTIONS.put("atan", UNARY);
+        FUNCTIONS.put("sinh", UNARY);
+        FUNCTIONS.put("cosh", UNARY);
+        FUNCTIONS.put("tanh", UNARY);
+        FUNCTIONS.put("exp", UNARY);
+        FUNCTIONS.put("abs", UNARY);
+        FUNCTIONS.put("floor", UNARY);
+        FUNCTIONS.put("ceil", UNARY);
+        FUNCTIONS.put("atan2", BINARY);
+    }
+
+    /**
+     * Carregador privado das classes geradas. Cada função compilada tem o seu
+     * próprio carregador, o que permite que a classe seja descartada junto com
+     * a função.
+     */
+    private static class FunctionClassLoader extends ClassLoader {
+
+        private FunctionClassLoader() {
+            super(CompiledFunction.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+    private final JEP parser;
+    private final OperatorSet operators;
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<Boolean> declared = new ArrayList<>();
+    private final ArrayList<Command> commands = new ArrayList<>();
+    private final ArrayList<Integer> loopEnds = new ArrayList<>();
+    //variáveis declaradas em cada bloco aberto, do mais externo ao atual
+    private final ArrayList<ArrayList<Integer>> scopes = new ArrayList<>();
+    private ClassWriter cw;
+    private int functionEnd;
+
+    private FunctionCompiler() {
+        parser = new JEP();
+        parser.addStandardFunctions();
+        parser.addStandardConstants();
+        parser.addFunction("get", new Get());
+        parser.setImplicitMul(false);
+        parser.setAllowAssignment(true);
+        parser.setAllowUndeclared(true);
+        operators = parser.getOperatorSet();
+    }
+
+    /**
+     * Compila uma função.
+     *
+     * @param f função a ser compilada
+     * @return função compilada, pronta para {@link CompiledFunction#run(ResourceManager)}
+     * @throws CompilationException se a função usar algo não suportado
+     */
+    public static CompiledFunction compile(Function f) throws CompilationException {
+        FunctionCompiler fc = new FunctionCompiler();
+
+        //primeira passada: descobre todas as variáveis, para que os comandos
+        //interpretados possam sincronizar todas elas
+        fc.cw = new ClassWriter();
+        fc.functionEnd = fc.cw.newLabel();
+        fc.compileFunctionBody(f);
+
+        fc.commands.clear();
+        fc.cw = new ClassWriter();
+        fc.functionEnd = fc.cw.newLabel();
+        //carrega todas as variáveis antes do corpo, para que as locais
+        //estejam definidas em qualquer caminho (o verificador da JVM rejeita
+        //a leitura de uma local que pode não ter sido escrita)
+        for (int i = 0; i < fc.names.size(); i++) {
+            fc.load(i);
+        }
+        fc.compileFunctionBody(f);
+        fc.cw.mark(fc.functionEnd);
+        for (int i = 0; i < fc.names.size(); i++) {
+            fc.spill(i);
+        }
+        fc.cw.op(ClassWriter.RETURN);
+
+        String name;
+        synchronized (FunctionCompiler.class) {
+            name = "robotinterface.interpreter.compiler.Function$" + classCounter++;
+        }
+        byte[] b = fc.cw.toByteArray(name.replace('.', '/'), BASE, "execute", "([D)V", 2 + 2 * fc.names.size());
+
+        CompiledFunction cf;
+        try {
+            cf = (CompiledFunction) new FunctionClassLoader().define(name, b).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError ex) {
+            throw new CompilationException("Falha ao carregar a função compilada: " + ex);
+        }
+
+        boolean[] d = new boolean[fc.declared.size()];
+        for (int i = 0; i < d.length; i++) {
+            d[i] = fc.declared.get(i);
+        }
+        cf.init(fc.names.toArray(new String[fc.names.size()]), d, fc.commands.toArray(new Command[fc.commands.size()]));
+        return cf;
+    }
+
+    private int slot(String name) {
+        int i = names.indexOf(name);
+        if (i < 0) {
+            names.add(name);
+            declared.add(false);
+            i = names.size() - 1;
+        }
+        return i;
+    }
+
+    private static int local(int slot) {
+        return 2 + 2 * slot;
+    }
+
+    //as variáveis da função continuam válidas depois do fim dela
+    private void compileFunctionBody(Function f) throws CompilationException {
+        scopes.add(new ArrayList<Integer>());
+        compileCommands(f);
+        scopes.remove(scopes.size() - 1);
+    }
+
+    /**
+     * Compila um bloco interno. Como no fim de um {@link Block} interpretado,
+     * as variáveis declaradas nele deixam de existir ao final do bloco.
+     */
+    private void compileBlock(Block b) throws CompilationException {
+        scopes.add(new ArrayList<Integer>());
+        compileCommands(b);
+        for (int slot : scopes.remove(scopes.size() - 1)) {
+            cw.loadThis();
+            cw.pushInt(slot);
+            cw.invokeVirtual(BASE, "undeclare", "(I)V", -2);
+        }
+    }
+
+    private void compileCommands(Block b) throws CompilationException {
+        Command it = b.getStart();
+        while (it != null && !(it instanceof Block.BlockEnd)) {
+            compileCommand(it);
+            it = it.getNext();
+        }
+    }
+
+    private void compileCommand(Command c) throws CompilationException {
+        if (c instanceof Function) {
+            throw new CompilationException("Funções aninhadas não são suportadas");
+        } else if (c instanceof While) {
+            int begin = cw.newLabel();
+            int end = cw.newLabel();
+            cw.mark(begin);
+            compileCondition((While) c, end);
+            loopEnds.add(end);
+            compileBlock((While) c);
+            loopEnds.remove(loopEnds.size() - 1);
+            cw.jump(ClassWriter.GOTO, begin);
+            cw.mark(end);
+        } else if (c instanceof If) {
+            If i = (If) c;
+            int otherwise = cw.newLabel();
+            int end = cw.newLabel();
+            compileCondition(i, otherwise);
+            compileBlock(i.getBlockTrue());
+            cw.jump(ClassWriter.GOTO, end);
+            cw.mark(otherwise);
+            compileBlock(i.getBlockFalse());
+            cw.mark(end);
+        } else if (c instanceof Block) {
+            compileBlock((Block) c);
+        } else if (c instanceof BreakLoop) {
+            cw.jump(ClassWriter.GOTO, loopEnds.isEmpty() ? functionEnd : loopEnds.get(loopEnds.size() - 1));
+        } else if (c instanceof Comment) {
+            //não executa nada
+        } else if (c.getClass() == Procedure.class || c instanceof DummyBlock) {
+            compileProcedure((Procedure) c, false);
+        } else if (!overridesStep(c)) {
+            compileCall(c);
+        } else {
+            throw new CompilationException("Comando não suportado: " + c.getCommandName());
+        }
+    }
+
+    private static boolean overridesStep(Command c) {
+        try {
+            return c.getClass().getMethod("step", ResourceManager.class).getDeclaringClass() != Command.class;
+        } catch (NoSuchMethodException ex) {
+            return true;
+        }
+    }
+
+    //avalia a condição e desvia para label se ela for falsa
+    private void compileCondition(Procedure p, int label) throws CompilationException {
+        compileProcedure(p, true);
+        cw.invokeStatic(BASE, "isTrue", "(D)Z", -1);
+        cw.jump(ClassWriter.IFEQ, label);
+    }
+
+    private void compileProcedure(Procedure p, boolean condition) throws CompilationException {
+        Iterator<Object> values = p.getVariableValues().iterator();
+        for (String name : p.getVariableNames()) {
+            Object value = values.next();
+            int slot = slot(name);
+            declared.set(slot, true);
+            //falha se a variável já existe, como no interpretador
+            cw.loadThis();
+            cw.pushInt(slot);
+            cw.invokeVirtual(BASE, "declare", "(I)V", -2);
+            scopes.get(scopes.size() - 1).add(slot);
+            if (value != null) {
+                compileExpression(parse(value.toString()));
+            } else {
+                cw.pushDouble(0);
+            }
+            cw.storeDouble(local(slot));
+        }
+
+        Iterator<String> statements = p.getStatements().iterator();
+        if (condition && !statements.hasNext()) {
+            cw.pushDouble(0);
+        }
+        while (statements.hasNext()) {
+            compileExpression(parse(statements.next()));
+            if (!condition || statements.hasNext()) {
+                cw.op(ClassWriter.POP2);
+            }
+        }
+    }
+
+    private void compileCall(Command c) throws CompilationException {
+        if (commands.size() > Short.MAX_VALUE || names.size() > Short.MAX_VALUE) {
+            throw new CompilationException("Função muito grande para ser compilada");
+        }
+        for (int i = 0; i < names.size(); i++) {
+            spill(i);
+        }
+        cw.loadThis();
+        cw.pushInt(commands.size());
+        cw.loadArray();
+        cw.invokeVirtual(BASE, "call", "(I[D)V", -3);
+        commands.add(c);
+        for (int i = 0; i < names.size(); i++) {
+            load(i);
+        }
+    }
+
+    private void load(int i) {
+        cw.loadArray();
+        cw.pushInt(i);
+        cw.loadArrayElement();
+        cw.storeDouble(local(i));
+    }
+
+    private void spill(int i) {
+        cw.loadArray();
+        cw.pushInt(i);
+        cw.loadDouble(local(i));
+        cw.storeArrayElement();
+    }
+
+    private Node parse(String expression) throws CompilationException {
+        try {
+            return parser.parse(expression);
+        } catch (ParseException e) {
+            throw new CompilationException(e.getMessage() + " in \"" + expression + "\"");
+        }
+    }
+
+    private void compileExpression(Node n) throws CompilationException {
+        if (n instanceof ASTConstant) {
+            Object value = ((ASTConstant) n).getValue();
+            if (!(value instanceof Number)) {
+                throw new CompilationException("Constante não suportada: " + value);
+            }
+            cw.pushDouble(((Number) value).doubleValue());
+        } else if (n instanceof ASTVarNode) {
+            Variable v = ((ASTVarNode) n).getVar();
+            if (v.isConstant()) {
+                if (!(v.getValue() instanceof Number)) {
+                    throw new CompilationException("Constante não suportada: " + v.getName());
+                }
+                cw.pushDouble(((Number) v.getValue()).doubleValue());
+            } else {
+                cw.loadDouble(local(slot(v.getName())));
+            }
+        } else if (n instanceof ASTFunNode && ((ASTFunNode) n).isOperator()) {
+            compileOperator((ASTFunNode) n);
+        } else if (n instanceof ASTFunNode) {
+            String name = ((ASTFunNode) n).getName();
+            String desc = FUNCTIONS.get(name);
+            int args = BINARY.equals(desc) ? 2 : 1;
+            if (desc == null || n.jjtGetNumChildren() != args) {
+                throw new CompilationException("Função não suportada: " + name);
+            }
+            compileChildren(n);
+            cw.invokeStatic(MATH, name, desc, 2 - 2 * args);
+        } else {
+            throw new CompilationException("Expressão não suportada: " + n);
+        }
+    }
+
+    private void compileChildren(Node n) throws CompilationException {
+        for (int i = 0; i < n.jjtGetNumChildren(); i++) {
+            compileExpression(n.jjtGetChild(i));
+        }
+    }
+
+    private void compileOperator(ASTFunNode n) throws CompilationException {
+        Operator op = n.getOperator();
+        int children = n.jjtGetNumChildren();
+
+        if (op == operators.getAssign()) {
+            Node lhs = n.jjtGetChild(0);
+            if (!(lhs instanceof ASTVarNode) || ((ASTVarNode) lhs).getVar().isConstant()) {
+                throw new CompilationException("Atribuição não suportada: " + lhs);
+            }
+            compileExpression(n.jjtGetChild(1));
+            cw.op(ClassWriter.DUP2);
+            cw.storeDouble(local(slot(((ASTVarNode) lhs).getName())));
+        } else if (op == operators.getUMinus() && children == 1) {
+            compileExpression(n.jjtGetChild(0));
+            cw.op(ClassWriter.DNEG);
+        } else if (op == operators.getNot() && children == 1) {
+            compileExpression(n.jjtGetChild(0));
+            cw.invokeStatic(BASE, "not", UNARY, 0);
+        } else if ((op == operators.getAdd() || op == operators.getMultiply()) && children >= 2) {
+            int opcode = (op == operators.getAdd()) ? ClassWriter.DADD : ClassWriter.DMUL;
+            compileExpression(n.jjtGetChild(0));
+            for (int i = 1; i < children; i++) {
+                compileExpression(n.jjtGetChild(i));
+                cw.op(opcode);
+            }
+        } else if (children == 2) {
+            compileChildren(n);
+            if (op == operators.getSubtract()) {
+                cw.op(ClassWriter.DSUB);
+            } else if (op == operators.getDivide()) {
+                cw.op(ClassWriter.DDIV);
+            } else if (op == operators.getMod()) {
+                cw.op(ClassWriter.DREM);
+            } else if (op == operators.getPower()) {
+                cw.invokeStatic(MATH, "pow", BINARY, -2);
+            } else if (op == operators.getLT()) {
+                cw.invokeStatic(BASE, "lt", BINARY, -2);
+            } else if (op == operators.getLE()) {
+                cw.invokeStatic(BASE, "le", BINARY, -2);
+            } else if (op == operators.getGT()) {
+                cw.invokeStatic(BASE, "gt", BINARY, -2);
+            } else if (op == operators.getGE()) {
+                cw.invokeStatic(BASE, "ge", BINARY, -2);
+            } else if (op == operators.getEQ()) {
+                cw.invokeStatic(BASE, "eq", BINARY, -2);
+            } else if (op == operators.getNE()) {
+                cw.invokeStatic(BASE, "ne", BINARY, -2);
+            } else if (op == operators.getAnd()) {
+                cw.invokeStatic(BASE, "and", BINARY, -2);
+            } else if (op == operators.getOr()) {
+                cw.invokeStatic(BASE, "or", BINARY, -2);
+            } else {
+                throw new CompilationException("Operador não suportado: " + op.getSymbol());
+            }
+        } else {
+            throw new CompilationException("Operador não suportado: " + op.getSymbol());
+        }
+    }
+}
@@ -36,6 +36,7 @@ import robotinterface.gui.panels.sidepanel.Classifiable;
 import robotinterface.gui.panels.sidepanel.Item;
 import robotinterface.interpreter.ExecutionException;
 import robotinterface.interpreter.ForceInterruptionException;
+import robotinterface.interpreter.Interpreter;
 import robotinterface.interpreter.ResourceManager;
 import robotinterface.util.trafficsimulator.Clock;
 import robotinterface.util.trafficsimulator.Timer;
@@ -66,8 +67,12 @@ public class KeyboardInput extends Procedure implements FunctionToken<KeyboardIn
     @Override
     public void begin(ResourceManager rm) throws ExecutionException {
         JEP parser = rm.getResource(JEP.class);
+        Interpreter interpreter = rm.getResource(Interpreter.class);
         arg0.parse(parser);
         String message = arg1.getStringValue();
+        if (interpreter.isHeadless()) {
+            throw new ExecutionException("Entrada pelo teclado indisponível na execução sem interface gráfica");
+        }
         String result = JOptionPane.showInputDialog(null, (message.isEmpty()) ? "Insira um valor:" : message, "Entrada", JOptionPane.QUESTION_MESSAGE);
         if (result == null || result.isEmpty()) {
             throw new ForceInterruptionException();
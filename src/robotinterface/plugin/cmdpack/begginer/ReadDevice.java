@@ -67,6 +67,7 @@ import robotinterface.robot.connection.message.Message;
 public class ReadDevice extends Procedure implements GraphicResource, Classifiable, FunctionToken<ReadDevice> {
 
     private static Color myColor = Color.decode("#ED4A6A");
+    private static HashMap<String, Class<? extends Device>> deviceTypes = null;
     private Device device;
     private Class<? extends Device> type;
     private Argument arg0;
@@ -85,32 +86,59 @@ public class ReadDevice extends Procedure implements GraphicResource, Classifiab
         }
     }
 
+    /**
+     * Procura a classe do dispositivo pelo nome usado no programa (o nome do
+     * dispositivo ou o nome da classe).
+     */
+    private static synchronized Class<? extends Device> findDeviceType(String name) {
+        if (deviceTypes == null) {
+            deviceTypes = new HashMap<>();
+            for (Class<?> c : RobotControlPanel.getAvailableDevices()) {
+                Class<? extends Device> dc = c.asSubclass(Device.class);
+                deviceTypes.put(dc.getSimpleName(), dc);
+                try {
+                    deviceTypes.put(dc.getDeclaredConstructor().newInstance().getName(), dc);
+                } catch (ReflectiveOperationException ex) {
+                    //sem construtor padrão acessível: só é encontrado pelo
+                    //nome da classe
+                }
+            }
+        }
+        return deviceTypes.get(name.trim());
+    }
+
     @Override
     public void begin(ResourceManager rm) throws ExecutionException {
         Robot robot = rm.getResource(Robot.class);
+        //o tipo vem do argumento, assim funciona também sem a interface
+        type = findDeviceType(arg0.toString());
+        if (type == null) {
+            throw new ExecutionException("Sensor desconhecido: " + arg0);
+        }
         device = robot.getDevice(type);
-        if (device != null) {
-            //mensagem get padrão 
-            byte[] msg = device.defaultGetMessage();
-            device.setWaiting();
-            if (msg.length > 0) {
-                //cria um buffer para a mensagem
-                ByteBuffer GETmessage = ByteBuffer.allocate(64);
-                //header do comando set
-                GETmessage.put(Robot.CMD_GET);
-                //id
-                GETmessage.put(device.getID());
-                //tamanho da mensagem
-                GETmessage.put((byte) msg.length);
-                //mensagem
-                GETmessage.put(msg);
-                //flip antes de enviar
-                GETmessage.flip();
-                robot.getMainConnection().send(GETmessage);
-            } else {
-                msg = new byte[]{Robot.CMD_GET, device.getID(), 0};
-                robot.getMainConnection().send(msg);
-            }
+        if (device == null) {
+            throw new ExecutionException("O robô não possui o sensor: " + arg0);
+        }
+        //mensagem get padrão 
+        byte[] msg = device.defaultGetMessage();
+        device.setWaiting();
+        if (msg.length > 0) {
+            //cria um buffer para a mensagem
+            ByteBuffer GETmessage = ByteBuffer.allocate(64);
+            //header do comando set
+            GETmessage.put(Robot.CMD_GET);
+            //id
+            GETmessage.put(device.getID());
+            //tamanho da mensagem
+            GETmessage.put((byte) msg.length);
+            //mensagem
+            GETmessage.put(msg);
+            //flip antes de enviar
+            GETmessage.flip();
+            robot.getMainConnection().send(GETmessage);
+        } else {
+            msg = new byte[]{Robot.CMD_GET, device.getID(), 0};
+            robot.getMainConnection().send(msg);
         }
     }
 
@@ -143,14 +171,12 @@ public class ReadDevice extends Procedure implements GraphicResource, Classifiab
 
         final JComboBox comboboxDev = new JComboBox();
         final JComboBox comboboxVar = new JComboBox();
-        final HashMap<String, Class<? extends Device>> deviceMap = new HashMap<>();
         for (Class<? extends Device> c : RobotControlPanel.getAvailableDevices()) {
             String str = c.getSimpleName();
             try {
                 str = c.newInstance().getName();
             } catch (Exception ex) {
             }
-            deviceMap.put(str, c);
             comboboxDev.addItem(str);
         }
 
@@ -183,7 +209,6 @@ public class ReadDevice extends Procedure implements GraphicResource, Classifiab
                 } else {
                     sb.append("read(").append(rd.arg0).append(")");
                 }
-                rd.type = deviceMap.get(rd.arg0.toString());
             }
         };
 
@@ -74,6 +74,11 @@ public class Wait extends Procedure implements Classifiable, FunctionToken<Wait>
         return timer.isConsumed();
     }
 
+    @Override
+    public boolean isClockBound() {
+        return true;
+    }
+
     @Override
     public Item getItem() {
         Area myShape = new Area();
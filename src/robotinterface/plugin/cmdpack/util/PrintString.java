@@ -38,9 +38,9 @@ import robotinterface.drawable.swing.component.WidgetLine;
 import robotinterface.drawable.swing.component.TextLabel;
 import robotinterface.drawable.swing.component.Widget;
 import robotinterface.drawable.util.QuickFrame;
-import robotinterface.gui.GUI;
 import robotinterface.gui.panels.sidepanel.Item;
 import robotinterface.interpreter.ExecutionException;
+import robotinterface.interpreter.Interpreter;
 import robotinterface.interpreter.ResourceManager;
 import robotinterface.util.trafficsimulator.Clock;
 import robotinterface.util.trafficsimulator.Timer;
@@ -71,6 +71,7 @@ public class PrintString extends Procedure implements FunctionToken<PrintString>
     public void begin(ResourceManager rm) throws ExecutionException {
         Clock clock = rm.getResource(Clock.class);
         JEP parser = rm.getResource(JEP.class);
+        Interpreter interpreter = rm.getResource(Interpreter.class);
         String out = getArg(0).getStringValue();
 
         String padps = "%V"; //printAllDecimalPlacesStr
@@ -99,7 +100,7 @@ public class PrintString extends Procedure implements FunctionToken<PrintString>
             }
         }
 
-        GUI.print(out);
+        interpreter.print(out);
         //System.out.println(out);
         timer.reset();
         clock.addTimer(timer);
@@ -110,6 +111,11 @@ public class PrintString extends Procedure implements FunctionToken<PrintString>
         return timer.isConsumed();
     }
 
+    @Override
+    public boolean isClockBound() {
+        return true;
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -5,6 +5,7 @@
 package robotinterface.robot;
 
 import robotinterface.robot.device.Device;
+import robotinterface.robot.device.IRProximitySensor;
 import robotinterface.robot.connection.Connection;
 import robotinterface.drawable.GraphicObject;
 import robotinterface.drawable.DrawingPanel;
@@ -21,7 +22,11 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import robotinterface.drawable.Drawable;
@@ -34,8 +39,10 @@ import robotinterface.robot.connection.message.Message;
 import robotinterface.util.observable.Observer;
 import robotinterface.robot.simulation.Environment;
 import robotinterface.robot.simulation.Perception;
+import robotinterface.robot.simulation.RobotGrid;
 import robotinterface.robot.simulation.VirtualConnection;
 import robotinterface.robot.simulation.VirtualDevice;
+import robotinterface.util.trafficsimulator.Clock;
 
 /**
  *
@@ -63,10 +70,11 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
     public static final byte XTRA_BEGIN = (byte) 225;
     public static final byte XTRA_END = (byte) 226;
     public boolean LOG = false;
-    public static final Action STOP_ALL = new StopAll();
-    public static final Action RESET_SYSTEM = new ResetSystem();
-    public static final Action UPDATE_ALL_DEVICES = new UpdateAllDevices();
-    public static final AddNewDevice ADD_NEW_DEVICE = new AddNewDevice();
+    //ações do sistema, enviadas pela conexão deste robô
+    private final Action stopAllAction = new StopAll();
+    private final Action resetSystemAction = new ResetSystem();
+    private final Action updateAllDevicesAction = new UpdateAllDevices();
+    private final AddNewDevice addNewDeviceAction = new AddNewDevice();
     private boolean DEBUG;
     private boolean moveDisabled = false;
     private boolean selected;
@@ -111,16 +119,29 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
     }
     private Environment environment;
     private final Perception perception;
+    private volatile Clock clock = null;
     private final ArrayList<Device> devices;
     private final ArrayList<Action> actions;
     private final ArrayList<Connection> connections;
+    private volatile Device[] devicesById = new Device[0];
+    private volatile Map<Class<?>, Device> devicesByClass = Collections.emptyMap();
+    private volatile Action[] actionsById = new Action[0];
+    private volatile Map<Class<?>, Action> actionsByClass = Collections.emptyMap();
     private int freeRam = 0;
     private double x, y;
     private double theta;
+    //posição publicada pela simulação, lida pelo desenho e pelos sensores
+    private volatile double posX, posY, posTheta;
     private double rightWheelSpeed, leftWheelSpeed;
+    private volatile boolean colliding = false;
     private final Rectangle2D.Double bounds = new Rectangle.Double();
+    //área desenhada (corpo, sensores e percepção) na última invalidação
+    private final Rectangle2D.Double drawnArea = new Rectangle2D.Double();
+    private final Rectangle2D.Double dirtyArea = new Rectangle2D.Double();
     private final ArrayList<Observer<Device, Robot>> observers = new ArrayList<>();
-    private final ByteBuffer buffer = ByteBuffer.allocate(256);
+    private final CopyOnWriteArrayList<Runnable> readListeners = new CopyOnWriteArrayList<>();
+    private final ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] text = new byte[256];
 
     public Robot() {
         devices = new ArrayList<>();
@@ -128,6 +149,10 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         connections = new ArrayList<>();
         perception = new Perception();
         add(new InternalClock());
+        stopAllAction.setRobot(this);
+        resetSystemAction.setRobot(this);
+        updateAllDevicesAction.setRobot(this);
+        addNewDeviceAction.setRobot(this);
 
         x = 0;
         y = 0;
@@ -140,6 +165,8 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         x = 0;
         y = 0;
         theta = 0;
+        colliding = false;
+        publish();
         perception.clearPath();
         for (Device d : devices) {
             d.resetState();
@@ -164,46 +191,88 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         }
     }
 
+    /**
+     * Registra uma tarefa executada sempre que uma resposta do robô chega,
+     * na thread que a recebeu; usada para acordar quem espera por ela.
+     */
+    public void addReadListener(Runnable listener) {
+        readListeners.add(listener);
+    }
+
+    public void removeReadListener(Runnable listener) {
+        readListeners.remove(listener);
+    }
+
+    /**
+     * Chamado por {@link Message#markUnread()} quando uma mensagem deste
+     * robô recebe uma resposta.
+     */
+    public void fireRead() {
+        for (Runnable r : readListeners) {
+            r.run();
+        }
+    }
+
     public void updateObservers(Device d) {
         for (Observer<Device, Robot> o : observers) {
             o.update(d, this);
         }
+        invalidate();
+    }
+
+    /**
+     * Pede ao painel que redesenhe o robô, os feixes dos sensores e a
+     * percepção, que mudam sem alterar os limites do robô; a área anterior
+     * também é redesenhada para apagar um feixe que diminuiu.
+     */
+    private void invalidate() {
+        double r = size / 2;
+        for (Device d : devicesById) {
+            if (d instanceof IRProximitySensor) {
+                r = Math.max(r, ((IRProximitySensor) d).getReach());
+            }
+        }
+        synchronized (drawnArea) {
+            dirtyArea.setRect(posX - r, posY - r, 2 * r, 2 * r);
+            if (!drawnArea.isEmpty()) {
+                dirtyArea.add(drawnArea);
+            }
+            drawnArea.setRect(posX - r, posY - r, 2 * r, 2 * r);
+            DrawingPanel.invalidate(this, dirtyArea);
+        }
     }
 
     public final int getFreeRam() {
         return freeRam;
     }
 
-    public final void add(Device d) {
+    public final synchronized void add(Device d) {
         devices.add(d);
         d.setID(devices.size() - 1);
+        d.setRobot(this);
+        rebuildDeviceTables();
     }
 
-    public final void remove(Device d) {
+    public final synchronized void remove(Device d) {
         devices.remove(d);
         d.setID(-1);
+        d.setRobot(null);
+        rebuildDeviceTables();
     }
 
-    public final <T> T getDevice(Class<? extends Device> c) {
-        Message.setConnection(getMainConnection());
-        for (Device d : devices) {
-            if (c.isInstance(d)) {
-                return (T) d;
-            }
-        }
-        return null;
+    public final <T extends Device> T getDevice(Class<T> c) {
+        return c.cast(devicesByClass.get(c));
     }
 
-    public final Device getDevice(int index) {
-        Message.setConnection(getMainConnection());
-        if (index < 0 || index >= devices.size()) {
+    public final Device getDevice(int id) {
+        Device[] table = devicesById;
+        if (id < 0 || id >= table.length) {
             return null;
         }
-        return devices.get(index);
+        return table[id];
     }
 
     public final List<Device> getDevices() {
-        Message.setConnection(getMainConnection());
         return devices;
     }
 
@@ -211,35 +280,33 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         return devices.size();
     }
 
-    public final void add(Action a) {
+    public final synchronized void add(Action a) {
         actions.add(a);
         a.setID(actions.size() - 1);
+        a.setRobot(this);
+        rebuildActionTables();
     }
 
-    public final void remove(Action a) {
+    public final synchronized void remove(Action a) {
         actions.remove(a);
         a.setID(-1);
+        a.setRobot(null);
+        rebuildActionTables();
     }
 
-    public final <T> T getAction(Class<? extends Action> c) {
-        Message.setConnection(getMainConnection());
-        for (Action a : actions) {
-            if (c.isInstance(a)) {
-                return (T) a;
-            }
-        }
-        return null;
+    public final <T extends Action> T getAction(Class<T> c) {
+        return c.cast(actionsByClass.get(c));
     }
 
-    public final Action getAction(int index) {
-        if (index < 0 || index >= actions.size()) {
+    public final Action getAction(int id) {
+        Action[] table = actionsById;
+        if (id < 0 || id >= table.length) {
             return null;
         }
-        return actions.get(index);
+        return table[id];
     }
 
     public final List<Action> getAction() {
-        Message.setConnection(getMainConnection());
         return actions;
     }
 
@@ -247,6 +314,63 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         return actions.size();
     }
 
+    /*
+     * As tabelas são substituídas inteiras a cada alteração, então as buscas
+     * feitas por outras threads (como a de leitura da serial) não precisam de
+     * sincronização.
+     */
+    private void rebuildDeviceTables() {
+        devicesById = buildIdTable(devices, new Device[maxId(devices) + 1]);
+        devicesByClass = buildClassTable(devices, Device.class);
+    }
+
+    private void rebuildActionTables() {
+        actionsById = buildIdTable(actions, new Action[maxId(actions) + 1]);
+        actionsByClass = buildClassTable(actions, Action.class);
+    }
+
+    private static int maxId(List<? extends Message> list) {
+        int max = -1;
+        for (Message m : list) {
+            max = Math.max(max, m.getID());
+        }
+        return max;
+    }
+
+    private static <M extends Message> M[] buildIdTable(List<M> list, M[] table) {
+        for (M m : list) {
+            int id = m.getID();
+            if (id >= 0 && table[id] == null) {
+                table[id] = m;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Associa cada classe e interface de cada elemento da lista (até a
+     * classe base) ao primeiro elemento da lista que é instância dela, que é
+     * o resultado da busca linear com <code>isInstance</code>.
+     */
+    private static <M> Map<Class<?>, M> buildClassTable(List<M> list, Class<?> base) {
+        HashMap<Class<?>, M> table = new HashMap<>();
+        for (M m : list) {
+            for (Class<?> c = m.getClass(); c != null && base.isAssignableFrom(c); c = c.getSuperclass()) {
+                register(table, c, m);
+            }
+        }
+        return table;
+    }
+
+    private static <M> void register(Map<Class<?>, M> table, Class<?> c, M m) {
+        if (!table.containsKey(c)) {
+            table.put(c, m);
+        }
+        for (Class<?> i : c.getInterfaces()) {
+            register(table, i, m);
+        }
+    }
+
     public final void add(Connection c) {
         c.attach(this);
         connections.add(c);
@@ -309,44 +433,70 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         return perception;
     }
 
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Define o relógio de quem controla o robô (o interpretador). Os tempos
+     * limite das mensagens passam a ser medidos nele.
+     */
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Retorna o tempo atual no relógio do robô, em milissegundos, ou o tempo
+     * do sistema se o robô não tem relógio.
+     */
+    public long currentTime() {
+        Clock c = clock;
+        return (c != null) ? c.getTime() : System.currentTimeMillis();
+    }
+
+    /**
+     * Converte um intervalo no relógio do robô em tempo real.
+     */
+    public long toRealTime(long milis) {
+        Clock c = clock;
+        return (c != null) ? c.toRealTime(milis) : milis;
+    }
+
     public void updateVirtualPerception() {
-        perception.addPathPoint(x, y);
+        perception.addPathPoint(posX, posY);
+    }
+
+    public Action getUpdateAllDevicesAction() {
+        return updateAllDevicesAction;
     }
 
     public void updatePerception() {
-        Message.setConnection(getMainConnection());
-        UPDATE_ALL_DEVICES.setAutoSend(false);
-        UPDATE_ALL_DEVICES.begin(this);
-        Action.run(UPDATE_ALL_DEVICES, this);
+        updateAllDevicesAction.setAutoSend(false);
+        updateAllDevicesAction.begin(this);
+        Action.run(updateAllDevicesAction, this);
     }
 
     public void resetSystem() {
-        Message.setConnection(getMainConnection());
-        RESET_SYSTEM.begin(this);
-        Action.run(RESET_SYSTEM, this);
+        resetSystemAction.begin(this);
+        Action.run(resetSystemAction, this);
     }
 
     public void stopAll() {
-        Message.setConnection(getMainConnection());
-        STOP_ALL.begin(this);
-        Action.run(STOP_ALL, this);
+        stopAllAction.begin(this);
+        Action.run(stopAllAction, this);
     }
 
     public void addAllDevices() {
-//        Message.setConnection(getMainConnection());
 //        for (Device d : devices){
-//            ADD_NEW_DEVICE.setDeviceId(d.getID());
-//            ADD_NEW_DEVICE.setDeviceData(d.defaultCreateMessage());
-//            ADD_NEW_DEVICE.begin(this);
-//            Action.run(ADD_NEW_DEVICE, this);
+//            addNewDeviceAction.setDeviceId(d.getID());
+//            addNewDeviceAction.setDeviceData(d.defaultCreateMessage());
+//            addNewDeviceAction.begin(this);
+//            Action.run(addNewDeviceAction, this);
 //        }
     }
 
     public final void virtualRobot(ByteBuffer message, Connection connection) {
-        try {
-            Thread.sleep(1);
-        } catch (InterruptedException ex) {
-        }
+        message.order(ByteOrder.LITTLE_ENDIAN);
         try {
             loop:
             while (message.remaining() > 0) {
@@ -358,7 +508,7 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                 switch (cmd) {
                     case CMD_STOP: {
                         //skip bytes
-                        STOP_ALL.markUnread();
+                        stopAllAction.markUnread();
                         message.get();
                         break;
                     }
@@ -395,10 +545,10 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
 
                     case CMD_GET: {
                         byte id = message.get();
-                        byte length = message.get();
+                        int length = message.get() & 0xFF;
                         if (message.remaining() >= length) {
-                            byte[] args = new byte[length];
-                            message.get(args);
+                            //os argumentos não são usados pelo robô virtual
+                            message.position(message.position() + length);
 
                             Device d = getDevice(id);
                             if (d != null && d instanceof VirtualDevice) {
@@ -426,27 +576,31 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
 
                     case CMD_SET: {
                         byte id = message.get();
-                        byte length = message.get();
+                        int length = message.get() & 0xFF;
                         if (message.remaining() >= length) {
-                            byte[] args = new byte[length];
-                            message.get(args);
-                            ByteBuffer tmp = ByteBuffer.wrap(args).asReadOnlyBuffer();
-                            tmp.order(ByteOrder.LITTLE_ENDIAN);
-                            if (id == XTRA_FREE_RAM) {
-                                freeRam = tmp.getChar();
-                                System.out.println("FreeRam: " + freeRam);
-                            } else {
-                                Device d = getDevice(id);
-                                if (d != null) {
-                                    if (d instanceof VirtualDevice) {
-                                        ((VirtualDevice) d).setState(tmp, this);
-                                    } else {
-                                        d.setState(tmp);
+                            int end = message.position() + length;
+                            int limit = message.limit();
+                            message.limit(end);
+                            try {
+                                if (id == XTRA_FREE_RAM) {
+                                    freeRam = message.getChar();
+                                    System.out.println("FreeRam: " + freeRam);
+                                } else {
+                                    Device d = getDevice(id);
+                                    if (d != null) {
+                                        if (d instanceof VirtualDevice) {
+                                            ((VirtualDevice) d).setState(message, this);
+                                        } else {
+                                            d.setState(message);
+                                        }
+                                        d.updateRobot(this);
+                                        d.markUnread();
+                                        updateObservers(d);
                                     }
-                                    d.updateRobot(this);
-                                    d.markUnread();
-                                    updateObservers(d);
                                 }
+                            } finally {
+                                message.limit(limit);
+                                message.position(end);
                             }
                         } else if (LOG) {
                             System.err.println("2mesagem muito curta:" + id + "[" + length + "] de " + message.remaining());
@@ -562,26 +716,24 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                 switch (cmd) {
                     case CMD_STOP: {
                         //skip bytes	
-                        STOP_ALL.markUnread();
+                        stopAllAction.markUnread();
                         message.get();
                         break;
                     }
 
                     case CMD_ECHO: {
-                        byte length = message.get();
-                        byte[] bytestr = new byte[length];
-                        message.get(bytestr);
-                        connection.send(bytestr);
+                        int length = message.get() & 0xFF;
+                        message.get(text, 0, length);
+                        connection.send(ByteBuffer.wrap(text, 0, length));
                         break;
                     }
 
                     case CMD_PRINT: {
                         byte connectionID = message.get();
-                        byte length = message.get();
-                        byte[] bytestr = new byte[length];
+                        int length = message.get() & 0xFF;
                         System.out.println("receiving:" + length);
-                        message.get(bytestr);
-                        System.out.println(new String(bytestr)); //TODO: stdout
+                        message.get(text, 0, length);
+                        System.out.println(new String(text, 0, length)); //TODO: stdout
 //                    if (connectionID == XTRA_ALL) {
 //                        for (Connection c : getConnections()) {
 //                            if (c != null) {
@@ -600,39 +752,43 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                     case CMD_GET: {
                         //skip bytes
                         message.get();
-                        byte length = message.get();
-                        byte[] args = new byte[length];
-                        message.get(args);
+                        skip(message, message.get() & 0xFF);
                         break;
                     }
 
                     case CMD_SET: {
                         byte id = message.get();
-                        byte length = message.get();
+                        int length = message.get() & 0xFF;
                         if (message.remaining() >= length) {
-                            byte[] args = new byte[length];
-                            message.get(args);
-                            ByteBuffer tmp = ByteBuffer.wrap(args).asReadOnlyBuffer();
-                            tmp.order(ByteOrder.LITTLE_ENDIAN);
-                            if (id == XTRA_FREE_RAM) {
-                                freeRam = tmp.getChar();
-                                System.out.println("FreeRam: " + freeRam);
-                            } else {
-                                Device d = getDevice(id);
-                                if (d != null) {
-                                    if (connection instanceof VirtualConnection
-                                            && d instanceof VirtualDevice
-                                            && ((VirtualConnection) connection).serial()) {
-                                        //robo real com ambiente virtual
-                                        ((VirtualDevice) d).setState(tmp, this);
-                                    } else {
-                                        //robo real (sem ambiente virtual) ou somente virtual
-                                        d.setState(tmp);
+                            //o dispositivo lê o estado direto da mensagem,
+                            //limitada aos seus bytes
+                            int end = message.position() + length;
+                            int limit = message.limit();
+                            message.limit(end);
+                            try {
+                                if (id == XTRA_FREE_RAM) {
+                                    freeRam = message.getChar();
+                                    System.out.println("FreeRam: " + freeRam);
+                                } else {
+                                    Device d = getDevice(id);
+                                    if (d != null) {
+                                        if (connection instanceof VirtualConnection
+                                                && d instanceof VirtualDevice
+                                                && ((VirtualConnection) connection).serial()) {
+                                            //robo real com ambiente virtual
+                                            ((VirtualDevice) d).setState(message, this);
+                                        } else {
+                                            //robo real (sem ambiente virtual) ou somente virtual
+                                            d.setState(message);
+                                        }
+                                        d.markUnread();
+                                        d.updateRobot(this);
+                                        updateObservers(d);
                                     }
-                                    d.markUnread();
-                                    d.updateRobot(this);
-                                    updateObservers(d);
                                 }
+                            } finally {
+                                message.limit(limit);
+                                message.position(end);
                             }
                         } else if (LOG) {
                             System.err.println("mesagem muito curta:" + id + "[" + length + "] de " + message.remaining());
@@ -643,9 +799,7 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                     case CMD_ADD: {
                         //skip bytes
                         message.get();
-                        byte length = message.get();
-                        byte[] args = new byte[length];
-                        message.get(args);
+                        skip(message, message.get() & 0xFF);
                         break;
                     }
 
@@ -659,18 +813,18 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                         byte cmdDone = message.get();
                         byte id = message.get();
                         if (cmdDone == CMD_RUN) {
-                            byte len = message.get();
+                            int len = message.get() & 0xFF;
                             if (message.remaining() >= len) {
-                                byte[] status = new byte[len];
-                                message.get(status);
+                                byte status = (len > 0) ? message.get(message.position()) : 0;
+                                skip(message, len);
                                 if (len > 0) {
                                     Action a = getAction(id);
                                     if (a != null) {
-                                        if (status[0] == XTRA_BEGIN) {
+                                        if (status == XTRA_BEGIN) {
                                             a.markUnread();
                                             a.setRunning();
 //                                            System.out.println("cmd begin:" + id);
-                                        } else if (status[0] == XTRA_END) {
+                                        } else if (status == XTRA_END) {
                                             a.markUnread();
                                             a.setDone();
 //                                            System.out.println("cmd end:" + id);
@@ -710,10 +864,10 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
                                 case CMD_STOP: {
                                     switch (id) {
                                         case XTRA_ALL:
-                                            STOP_ALL.markUnread();
+                                            stopAllAction.markUnread();
                                             break;
                                         case XTRA_SYSTEM:
-                                            //STOP_ALL.markUnread();
+                                            //stopAllAction.markUnread();
                                             break;
                                         default:
                                             System.out.println("stop?" + id);
@@ -747,12 +901,20 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         }
     }
 
+    private static void skip(ByteBuffer message, int length) {
+        if (message.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        message.position(message.position() + length);
+    }
+
     public double getTheta() {
-        return theta;
+        return posTheta;
     }
 
     public void setTheta(double theta) {
         this.theta = theta;
+        posTheta = theta;
     }
 
     public double getRightWheelSpeed() {
@@ -771,6 +933,69 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         this.leftWheelSpeed = leftWheelSpeed;
     }
 
+    /**
+     * Avança a física do robô em <code>dt</code> segundos. Chamado pela
+     * {@link robotinterface.robot.simulation.Simulation}; a nova posição só
+     * fica visível depois de {@link #publish()}.
+     */
+    public void simulate(double dt) {
+        simulate(dt, null);
+    }
+
+    /**
+     * Avança a física do robô sem atravessar as paredes do ambiente nem os
+     * robôs do índice <code>others</code> (que pode ser nulo). Ao encostar, o
+     * robô para no ponto de contato e o início do contato é registrado na
+     * {@link Perception}.
+     */
+    public void simulate(double dt, RobotGrid others) {
+        if (!moveDisabled) {
+            double x0 = x;
+            double y0 = y;
+            move(dt);
+            double dx = x - x0;
+            double dy = y - y0;
+            double t = Double.POSITIVE_INFINITY;
+            if (dx != 0 || dy != 0) {
+                Environment env = environment;
+                if (env != null) {
+                    t = env.sweep(x0, y0, dx, dy, size / 2);
+                }
+                if (others != null && t > 0) {
+                    t = Math.min(t, others.sweep(this, x0, y0, dx, dy, size / 2));
+                }
+            }
+            if (t <= 1) {
+                x = x0 + t * dx;
+                y = y0 + t * dy;
+                if (!colliding) {
+                    perception.addCollision(x, y);
+                }
+                colliding = true;
+            } else {
+                colliding = false;
+            }
+        }
+    }
+
+    /**
+     * Verifica se o robô estava encostado em algo no último passo da
+     * simulação.
+     */
+    public boolean isColliding() {
+        return colliding;
+    }
+
+    /**
+     * Publica a posição atual da simulação para o desenho e os sensores.
+     */
+    public void publish() {
+        posX = x;
+        posY = y;
+        posTheta = theta;
+        invalidate();
+    }
+
     private void move(double dt) {
         double pf = rightWheelSpeed + leftWheelSpeed;
         double mf = leftWheelSpeed - rightWheelSpeed;
@@ -798,8 +1023,8 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
 
     @Override
     public final Rectangle2D.Double getObjectBouds() {
-        bounds.x = x;
-        bounds.y = y;
+        bounds.x = posX;
+        bounds.y = posY;
         bounds.width = bounds.height = size;
         return bounds;
     }
@@ -811,18 +1036,18 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
 
     @Override
     public void setLocation(double x, double y) {
-        bounds.x = this.x = x;
-        bounds.y = this.y = y;
+        bounds.x = posX = this.x = x;
+        bounds.y = posY = this.y = y;
     }
 
     @Override
     public double getPosX() {
-        return x;
+        return posX;
     }
 
     @Override
     public double getPosY() {
-        return y;
+        return posY;
     }
 
     @Override
@@ -857,7 +1082,7 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
         t.setTransform(o);
 
         //t.translate(x, y); DrawingPanel se encarrega de definir a posiçãos
-        t.rotate(theta);
+        t.rotate(posTheta);
         g.setTransform(t);
 
         int iSize = (int) size;
@@ -894,9 +1119,6 @@ public class Robot implements Observer<ByteBuffer, Connection>, GraphicObject {
 
         g.setTransform(o);
         ga.done(t);
-        if (!moveDisabled) {
-            move(ga.getClock().getDt());
-        }
     }
 
     @Override
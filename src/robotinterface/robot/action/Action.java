@@ -16,7 +16,7 @@ import robotinterface.robot.connection.message.Message;
  */
 public abstract class Action extends Message {
 
-    private static final ByteBuffer buffer = ByteBuffer.allocate(256);
+    private final ByteBuffer buffer = ByteBuffer.allocate(256);
     private boolean waitingMessage = false;
     private boolean autoSend = true;
     private boolean singleMessage = false;
@@ -53,7 +53,8 @@ public abstract class Action extends Message {
     public static void run(Action action, Robot robot) {
         while (!action.perform(robot)) {
             try {
-                Thread.sleep(5);
+                //dorme até a resposta chegar ou o tempo limite terminar
+                action.waitRead(Long.MAX_VALUE);
             } catch (InterruptedException ex) {
             }
         }
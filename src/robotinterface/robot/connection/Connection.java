@@ -23,6 +23,18 @@ public interface Connection extends Observable<ByteBuffer,Connection> {
     
     public void send(ByteBuffer data);
 
+    /**
+     * Ativa ou desativa o agrupamento das mensagens enviadas. Enquanto ativo,
+     * as mensagens podem ser acumuladas até a próxima chamada de
+     * {@link #flush()}; ao desativar, as mensagens pendentes são enviadas.
+     */
+    public void setBatching(boolean batching);
+
+    /**
+     * Envia imediatamente as mensagens acumuladas.
+     */
+    public void flush();
+
     public boolean available();
 
     public int receive(byte[] b, int size);
@@ -0,0 +1,115 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.connection;
+
+import robotinterface.robot.Robot;
+
+/**
+ * Fila de mensagens de saída de uma conexão.
+ * <p>
+ * Acumula os comandos enviados durante um ciclo do interpretador em um único
+ * pacote (limitado a {@link #MAX_FRAME} bytes, pois o tamanho é enviado em um
+ * byte). Se a mensagem enfileirada é formada apenas por comandos
+ * <code>CMD_SET</code> que a nova mensagem sobrescreve (mesmo dispositivo,
+ * mesmo tamanho e mesmo primeiro byte de dados, como o motor da ponte H), a
+ * anterior é descartada e apenas a última é enviada.
+ *
+ * @author antunes
+ */
+public class OutboundQueue {
+
+    public static final int MAX_FRAME = 255;
+    private final byte[] data = new byte[MAX_FRAME];
+    private int size = 0;
+    private int lastStart = -1;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void clear() {
+        size = 0;
+        lastStart = -1;
+    }
+
+    /**
+     * Adiciona uma mensagem na fila.
+     *
+     * @return false se a mensagem não cabe no pacote atual
+     */
+    public boolean add(byte[] msg, int offset, int length) {
+        if (lastStart >= 0 && overrides(msg, offset, length, data, lastStart, size - lastStart)) {
+            //descarta a mensagem anterior, que seria sobrescrita
+            size = lastStart;
+        }
+        if (size + length > MAX_FRAME) {
+            return false;
+        }
+        System.arraycopy(msg, offset, data, size, length);
+        lastStart = size;
+        size += length;
+        return true;
+    }
+
+    /**
+     * Verifica se todos os comandos de <code>old</code> são sobrescritos por
+     * algum comando de <code>msg</code>.
+     */
+    private static boolean overrides(byte[] msg, int offset, int length, byte[] old, int oldOffset, int oldLength) {
+        if (!isSetOnly(msg, offset, length) || !isSetOnly(old, oldOffset, oldLength)) {
+            return false;
+        }
+        int i = oldOffset;
+        int end = oldOffset + oldLength;
+        while (i < end) {
+            int len = old[i + 2] & 0xFF;
+            if (!containsSet(msg, offset, length, old[i + 1], len, (len > 0) ? old[i + 3] : 0)) {
+                return false;
+            }
+            i += 3 + len;
+        }
+        return true;
+    }
+
+    private static boolean containsSet(byte[] msg, int offset, int length, byte id, int len, byte first) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end) {
+            int l = msg[i + 2] & 0xFF;
+            if (msg[i + 1] == id && l == len && (l == 0 || msg[i + 3] == first)) {
+                return true;
+            }
+            i += 3 + l;
+        }
+        return false;
+    }
+
+    /**
+     * Retorna true se a mensagem é formada apenas por comandos
+     * <code>CMD_SET id tamanho dados...</code> completos.
+     */
+    private static boolean isSetOnly(byte[] msg, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        if (length <= 0) {
+            return false;
+        }
+        while (i < end) {
+            if (i + 3 > end || msg[i] != Robot.CMD_SET) {
+                return false;
+            }
+            i += 3 + (msg[i + 2] & 0xFF);
+        }
+        return i == end;
+    }
+}
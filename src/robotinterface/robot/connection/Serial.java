@@ -10,10 +10,8 @@ import gnu.io.SerialPort;
 import gnu.io.SerialPortEvent;
 import gnu.io.SerialPortEventListener;
 import java.awt.EventQueue;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
@@ -46,23 +44,38 @@ public class Serial implements Connection, SerialPortEventListener {
     private SerialPort serialPort;
     private String defaultPort = null;
     private boolean isConnected = false;
-    private boolean available = false;
+    private volatile boolean available = false;
+    private final Object availableLock = new Object();
     private int sendedPackages = 0;
     private int receivedPackages = 0;
+    private final OutboundQueue queue = new OutboundQueue();
+    private boolean batching = false;
     private static final String PORT_NAMES[] = {
         "/dev/tty.usbserial-A9007UX1", // Mac OS X
         "/dev/ttyUSB#", // Linux
         "/dev/ttyACM#", // Linux USB 3.0
         "COM#", // Windows
     };
-    /**
-     * A BufferedReader which will be fed by a InputStreamReader converting the
-     * bytes into characters making the displayed results codepage independent
-     */
     private InputStream input;
-    private BufferedReader bufferedReader;
-    private ByteBuffer buffer;
     public static Charset charset = new ByteCharset();
+    /**
+     * Buffer circular com os bytes recebidos e ainda não processados; guarda
+     * mensagens que chegam divididas em mais de um evento da porta serial.
+     */
+    private static final int RING_SIZE = 1024; //potência de 2
+    private final byte[] ring = new byte[RING_SIZE];
+    private int ringStart = 0;
+    private int ringCount = 0;
+    /**
+     * Última mensagem completa recebida (sem o byte de tamanho) e uma visão
+     * somente leitura dela, entregue aos observadores.
+     */
+    private final ByteBuffer frame;
+    private final ByteBuffer frameView;
+    private final Object readerLock = new Object();
+    private boolean dataAvailable = false;
+    private volatile boolean reading = false;
+    private Thread reader;
     /**
      * The output stream to the port
      */
@@ -80,7 +93,8 @@ public class Serial implements Connection, SerialPortEventListener {
     public Serial(int dataRate) {
         observers = new ArrayList<>();
         this.dataRate = dataRate;
-        buffer = ByteBuffer.allocate(256);
+        frame = ByteBuffer.allocate(256);
+        frameView = frame.asReadOnlyBuffer();
     }
 
     public int getSendedPackages() {
@@ -101,20 +115,49 @@ public class Serial implements Connection, SerialPortEventListener {
 
     @Override
     public void send(final byte[] data) {
-        /*byte length = (byte) data.length;
-         byte[] newdata = new byte[length + 1];
-         System.arraycopy(data, 0, newdata, 1, length);
-         newdata[0] = length;*/
+        send(data, 0, data.length);
+    }
+
+    private synchronized void send(byte[] data, int offset, int length) {
+        if (batching) {
+            if (!queue.add(data, offset, length)) {
+                flush();
+                if (!queue.add(data, offset, length)) {
+                    write(data, offset, length);
+                }
+            }
+        } else {
+            write(data, offset, length);
+        }
+    }
+
+    private void write(byte[] data, int offset, int length) {
         try {
             sendedPackages++;
-            output.write(data.length);
-            output.write(data);
+            output.write(length);
+            output.write(data, offset, length);
 //            output.flush(); //trava a thread main! pq???
         } catch (IOException ex) {
             System.out.println("Send fail!");
         }
     }
 
+    @Override
+    public synchronized void setBatching(boolean batching) {
+        if (!batching) {
+            flush();
+        }
+        this.batching = batching;
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (!queue.isEmpty()) {
+            write(queue.getData(), 0, queue.size());
+            queue.clear();
+        }
+    }
+
 //    public void send(final byte[] data, boolean sendLength) {
 //        if (sendLength) {
 //            byte length = (byte) data.length;
@@ -129,9 +172,14 @@ public class Serial implements Connection, SerialPortEventListener {
     @Override
     public void send(ByteBuffer data) {
         int length = data.remaining();
-        byte[] msg = new byte[length];
-        data.get(msg);
-        send(msg);
+        if (data.hasArray()) {
+            send(data.array(), data.arrayOffset() + data.position(), length);
+            data.position(data.limit());
+        } else {
+            byte[] msg = new byte[length];
+            data.get(msg);
+            send(msg);
+        }
     }
 
     @Override
@@ -139,14 +187,37 @@ public class Serial implements Connection, SerialPortEventListener {
         return available;
     }
 
+    /**
+     * Bloqueia a thread atual até que uma mensagem esteja disponível ou até
+     * que <code>timeout</code> milissegundos se passem.
+     *
+     * @return true se existe uma mensagem disponível
+     */
+    public boolean waitAvailable(long timeout) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        synchronized (availableLock) {
+            while (!available) {
+                long remaining = timeout - (System.currentTimeMillis() - start);
+                if (remaining <= 0) {
+                    return false;
+                }
+                availableLock.wait(remaining);
+            }
+        }
+        return true;
+    }
+
     @Override
     public int receive(byte[] b, int size) {
-        available = false;
-        if (available && buffer != null) {
-            buffer.get(b);
-            return buffer.position();
-        } else {
-            return 0;
+        synchronized (availableLock) {
+            if (available) {
+                available = false;
+                int length = Math.min(Math.min(size, b.length), frame.limit());
+                System.arraycopy(frame.array(), 0, b, 0, length);
+                return length;
+            } else {
+                return 0;
+            }
         }
     }
 
@@ -196,10 +267,10 @@ public class Serial implements Connection, SerialPortEventListener {
 
             // open the streams
             input = serialPort.getInputStream();
-            bufferedReader = new BufferedReader(new InputStreamReader(input, charset));
-            input = serialPort.getInputStream();
             output = serialPort.getOutputStream();
 
+            startReader();
+
             // add event listeners
             serialPort.addEventListener(this);
             serialPort.notifyOnDataAvailable(true);
@@ -298,6 +369,11 @@ public class Serial implements Connection, SerialPortEventListener {
 
     @Override
     public void closeConnection() {
+        stopReader();
+        synchronized (this) {
+            queue.clear();
+            batching = false;
+        }
         if (serialPort != null) {
             serialPort.removeEventListener();
             serialPort.close();
@@ -318,109 +394,111 @@ public class Serial implements Connection, SerialPortEventListener {
     public void detach(Observer<ByteBuffer, Connection> observer) {
         observers.remove(observer);
     }
-    boolean newMessage = false;
-
     @Override
-    synchronized public void serialEvent(SerialPortEvent spe) {
+    public void serialEvent(SerialPortEvent spe) {
         if (spe.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
-            try {
-                //define a posição como o inicio do buffer e remove a marca e o limite
-                buffer.clear();
-//                System.out.println("start");
-                byte[] tmpByte = new byte[1];
-                //preenche o buffer
-                while (true) {
-                    //System.out.println("\t1: " + System.currentTimeMillis());
-                    //obtem uma string delimitada por '\n', '\t' ou "\t\n"
-                    String str = bufferedReader.readLine();
-//                    printBytes(str);
-                    //obtem os bytes codificados na string com o Charset personalizado
-                    byte[] data = str.getBytes(charset);
-                    if (data.length > 1) {
-                        buffer.put(data, 1, data.length - 1);
-                        //System.out.println("\t2: " + System.currentTimeMillis());
-                        //printBytes(data, data.length);
-                        receivedPackages++;
-                        available = true;
+            //apenas acorda a thread de leitura
+            synchronized (readerLock) {
+                dataAvailable = true;
+                readerLock.notifyAll();
+            }
+        }
+    }
+
+    private void startReader() {
+        ringStart = 0;
+        ringCount = 0;
+        reading = true;
+        reader = new Thread("Serial Reader") {
+            @Override
+            public void run() {
+                try {
+                    while (reading) {
+                        synchronized (readerLock) {
+                            if (!dataAvailable) {
+                                readerLock.wait(100);
+                            }
+                            dataAvailable = false;
+                        }
+                        read();
                     }
-                    if (bufferedReader.ready()) {
-//                        while (input.available() > 0) {
-//                            input.read(tmpByte);
-//                            buffer.put(tmpByte[0]);
-//                        }
-                        break;
-                        //não remove os valores 10 presentes no meio da mensagem
-                        //buffer.put((byte) '\n');
-                    } else {
-                        break;
+                } catch (InterruptedException | IOException e) {
+                    if (reading) {
+                        System.err.println(e.toString());
                     }
                 }
+            }
+        };
+        reader.setDaemon(true);
+        reader.start();
+    }
 
-//                printBytes(buffer.array(), buffer.array().length);
-                byte[] w = buffer.array();
+    private void stopReader() {
+        reading = false;
+        if (reader != null) {
+            reader.interrupt();
+            reader = null;
+        }
+    }
 
-                for (int i = 0; i < w.length; i++) {
-                    if (w[i] == '\n') {
-                        System.err.println("FUNCIONOU!!");
-                        System.exit(0);
-                    }
-                }
+    private void read() throws IOException {
+        read(input);
+    }
 
-//                byte [] size = new byte[1];
-//                input.read(size);
-//                
-//                byte [] data = new byte[size[0]];
-//                
-//                for (int i = 0; i < size[0]; i++){
-//                    
-//                }
-//                //sem usar string
-//                while (true) {
-//                    //obtem uma string delimitada por '\n', '\t' ou "\t\n"
-//                    int size = input.read();
-//                    System.out.println("size: "+ size);
-//                    byte [] data = new byte[size];
-////                    String str = bufferedReader.readLine();
-////                    printBytes(str);
-//                    r++;
-//                    System.out.println("S:" + s + " x R:" + r);
-//                    //obtem os bytes codificados na string com o Charset personalizado
-//                    buffer.put(data);//str.getBytes(charset));
-//                    if (bufferedReader.ready()) {
-//                        //não remove os valores 10 presentes no meio da mensagem
-//                        buffer.put((byte) '\n');
-//                    } else {
-//                        break;
-//                    }
-//                }
-                //define esta posição como limite e retorna para a posição 0
-                //buffer.limit() retorna o tamanho da mensagem
-                buffer.flip();
-
-                /*
-                 * Exemplo de como usar um ByteBuffer para leitura
-                 * 
-                 ByteBuffer cpy = buffer.asReadOnlyBuffer();
-
-                 System.out.println("Tamanho:" + cpy.limit());
-                 int k = 0; //contador
-                 while (cpy.remaining() > 0){
-                 System.out.println(k + " : " + (byte)cpy.get());
-                 k++;
-                 }
-                 */
-                //se for possivel ler um ou mais bytes
-                if (buffer.remaining() > 0 && !observers.isEmpty()) {
-                    //notify observers
-                    for (Observer<ByteBuffer, Connection> o : observers) {
-                        o.update(buffer.asReadOnlyBuffer(), this);
-                    }
-                    available = false;
+    /**
+     * Lê todos os bytes disponíveis em <code>in</code> para o buffer circular
+     * e entrega as mensagens completas aos observadores.
+     */
+    void read(InputStream in) throws IOException {
+        while (in.available() > 0) {
+            int end = (ringStart + ringCount) & (RING_SIZE - 1);
+            int free = Math.min(RING_SIZE - ringCount, RING_SIZE - end);
+            int n = in.read(ring, end, free);
+            if (n <= 0) {
+                break;
+            }
+            ringCount += n;
+            parseFrames();
+        }
+    }
+
+    /**
+     * Extrai do buffer circular as mensagens completas no mesmo formato
+     * usado por {@link #send(byte[])}: um byte com o tamanho seguido dos
+     * dados.
+     */
+    private void parseFrames() {
+        while (ringCount > 0) {
+            int length = ring[ringStart] & 0xFF;
+            if (ringCount < length + 1) {
+                //mensagem incompleta, espera o próximo evento
+                return;
+            }
+            int p = (ringStart + 1) & (RING_SIZE - 1);
+            int first = Math.min(length, RING_SIZE - p);
+            ringStart = (ringStart + length + 1) & (RING_SIZE - 1);
+            ringCount -= length + 1;
+            if (length == 0) {
+                continue;
+            }
+
+            synchronized (availableLock) {
+                frame.clear();
+                frame.put(ring, p, first);
+                frame.put(ring, 0, length - first);
+                frame.flip();
+                receivedPackages++;
+                available = true;
+                availableLock.notifyAll();
+            }
+
+            if (!observers.isEmpty()) {
+                for (Observer<ByteBuffer, Connection> o : observers) {
+                    frameView.limit(frame.limit());
+                    frameView.position(0);
+                    o.update(frameView, this);
                 }
-                //System.out.println("\t3: " + System.currentTimeMillis());
-            } catch (Exception e) {
-                e.printStackTrace();
-                System.err.println(e.toString());
+                available = false;
             }
         }
     }
@@ -562,22 +640,12 @@ public class Serial implements Connection, SerialPortEventListener {
                     int w = ((Serial) s).getReceivedPackages();
                     s.send(message);
                     try {
-                        loop:
-                        while (!((Serial) s).available()) {//w == ((Serial)s).getReceivedPackages()/*((Serial) s).receivedPackages*/) {
-                            //tempo maximo para enviar: ~20ms da RXTXcomm + 8ms do radio
-                            Thread.sleep(1); //tempo maximo para enviar: ~20ms da RXTXcomm + 8ms do radio
-                            //w++;
-                            if (System.currentTimeMillis() - mtimestamp > 1000) {
-//                                s.send(message);
-                                //w = 0;
-                                timeout = true;
-                                test--;
-                                System.out.println("Timeout");
-                                break loop;
-                            }
-
-//                    } catch (InterruptedException ex) {
-//                        Logger.getLogger(Serial.class.getName()).log(Level.SEVERE, null, ex);
+                        //tempo maximo para enviar: ~20ms da RXTXcomm + 8ms do radio
+                        if (!s.waitAvailable(1000)) {
+//                            s.send(message);
+                            timeout = true;
+                            test--;
+                            System.out.println("Timeout");
                         }
                     } catch (InterruptedException ex) {
                     }
@@ -50,6 +50,9 @@ public class Serial2 implements Connection, SerialPortEventListener {
     private int bufferSize = 1;  // how big before reset or event firing
 
     private boolean newMessage = true;
+    //mensagem recebida, reaproveitada a cada pacote
+    private final ByteBuffer message = ByteBuffer.allocate(258);
+    private final ByteBuffer messageView = message.asReadOnlyBuffer();
     private Queue<byte[]> messages;
 
     /**
@@ -296,18 +299,21 @@ public class Serial2 implements Connection, SerialPortEventListener {
         //System.out.println("Available: " + (bufferLast - bufferIndex));
         if ((bufferLast - bufferIndex) >= bufferSize) {
             if (!observers.isEmpty()) {
-                ByteBuffer message = ByteBuffer.allocate(bufferSize + 1); // TODO: REMOVER +1
+                message.clear();
+                message.limit(bufferSize + 1); // TODO: REMOVER +1
                 message.put((byte) bufferSize); // TODO: REMOVER
                 readBytes(message);
                 message.flip();
                 for (Observer<ByteBuffer, Connection> o : observers) {
-                    o.update(message.asReadOnlyBuffer(), this);
+                    messageView.limit(message.limit());
+                    messageView.position(0);
+                    o.update(messageView, this);
                 }
             } else {
-                byte[] message = new byte[bufferSize];
-                readBytes(message);
+                byte[] data = new byte[bufferSize];
+                readBytes(data);
                 synchronized (messages) {
-                    messages.add(message);
+                    messages.add(data);
                 }
             }
             receivedPackages++;
@@ -339,6 +345,14 @@ public class Serial2 implements Connection, SerialPortEventListener {
         send(msg);
     }
 
+    @Override
+    public void setBatching(boolean batching) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
     public void buffer(int count) {
         bufferSize = count;
     }
@@ -429,8 +443,8 @@ public class Serial2 implements Connection, SerialPortEventListener {
 
         synchronized (buffer) {
             int length = bufferLast - bufferIndex;
-            if (length > outgoing.capacity()) {
-                length = outgoing.capacity();
+            if (length > outgoing.remaining()) {
+                length = outgoing.remaining();
             }
             outgoing.put(buffer, bufferIndex, length);
 
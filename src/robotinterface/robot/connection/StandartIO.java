@@ -24,6 +24,14 @@ public class StandartIO implements Connection {
         System.out.println(data.toString());
     }
 
+    @Override
+    public void setBatching(boolean batching) {
+    }
+
+    @Override
+    public void flush() {
+    }
+
     @Override
     public boolean available() {
         return false;
@@ -22,11 +22,13 @@ public abstract class Message {
     private static long time = 0;
     private static int receivedPackages = 0;
     private static int lostPackages = 0;
-    private boolean received = false;
+    private static final Object readLock = new Object();
+    private static long readCount = 0;
+    private volatile boolean received = false;
     private long startReadingTime;
-    protected static Connection connection = null;
     private byte id;
     private long tmpTimeout;
+    private Robot robot = null;
     
     public void setID(int id) {
         this.id = (byte) id;
@@ -36,24 +38,124 @@ public abstract class Message {
         return id;
     }
 
-    public static void setConnection(Connection connection) {
-        Message.connection = connection;
+    public Robot getRobot() {
+        return robot;
+    }
+
+    /**
+     * Define o robô dono da mensagem, cuja conexão principal passa a ser
+     * usada no envio. Chamado por {@link Robot#add(Device)}.
+     */
+    public final void setRobot(Robot robot) {
+        this.robot = robot;
+    }
+
+    /**
+     * Retorna a conexão principal do robô dono da mensagem, ou
+     * <code>null</code> se a mensagem não pertence a um robô conectado.
+     */
+    private Connection getConnection() {
+        return (robot != null) ? robot.getMainConnection() : null;
+    }
+
+    /**
+     * Tempo atual no relógio do robô dono da mensagem (ver
+     * {@link Robot#currentTime()}), em que os tempos limite são medidos.
+     */
+    private long now() {
+        return (robot != null) ? robot.currentTime() : System.currentTimeMillis();
     }
 
     @Deprecated
     public final void markUnread() { //só usado por Robot.update(...)
-        received = true;
+        synchronized (readLock) {
+            received = true;
+            readCount++;
+            readLock.notifyAll();
+        }
+        if (robot != null) {
+            robot.fireRead();
+        }
     }
 
     public final void setWaiting() {
-        startReadingTime = System.currentTimeMillis();
-        received = false;
-        tmpTimeout = TIMEOUT;
+        synchronized (readLock) {
+            startReadingTime = now();
+            received = false;
+            tmpTimeout = TIMEOUT;
+        }
     }
     
     public final void setWaiting(long tmpTimeout) {
-        setWaiting();
-        this.tmpTimeout = tmpTimeout;
+        synchronized (readLock) {
+            setWaiting();
+            this.tmpTimeout = tmpTimeout;
+        }
+    }
+
+    /**
+     * Bloqueia a thread atual até que a resposta desta mensagem chegue, o
+     * tempo limite definido em {@link #setWaiting(long)} termine ou
+     * <code>maxWait</code> milissegundos se passem. Não altera o estado da
+     * mensagem: depois de retornar deve-se chamar {@link #isValidRead()}.
+     * O tempo limite da mensagem é medido no relógio do robô e convertido em
+     * tempo real para a espera.
+     *
+     * @param maxWait tempo máximo de espera, em milissegundos reais
+     */
+    public final void waitRead(long maxWait) throws InterruptedException {
+        Connection c = getConnection();
+        if (c != null) {
+            //a resposta só chega depois que o pedido for enviado
+            c.flush();
+        }
+        long start = System.currentTimeMillis();
+        synchronized (readLock) {
+            long timeout = tmpTimeout - (now() - startReadingTime);
+            if (robot != null && timeout > 0 && timeout < Long.MAX_VALUE / 2) {
+                timeout = robot.toRealTime(timeout);
+            }
+            maxWait = Math.min(maxWait, timeout);
+            while (!received) {
+                long remaining = maxWait - (System.currentTimeMillis() - start);
+                if (remaining <= 0) {
+                    return;
+                }
+                readLock.wait(remaining);
+            }
+        }
+    }
+
+    /**
+     * Retorna o número de respostas recebidas até o momento; usado junto com
+     * {@link #waitAnyRead(long, long)}.
+     */
+    public static long getReadCount() {
+        synchronized (readLock) {
+            return readCount;
+        }
+    }
+
+    /**
+     * Bloqueia a thread atual até que qualquer mensagem seja marcada como
+     * recebida depois de <code>readCount</code> ter sido obtido por
+     * {@link #getReadCount()}, ou até que <code>maxWait</code> milissegundos
+     * se passem.
+     *
+     * @param readCount valor de {@link #getReadCount()} antes da verificação
+     * @param maxWait tempo máximo de espera, em milissegundos
+     */
+    public static void waitAnyRead(long readCount, long maxWait) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        synchronized (readLock) {
+            while (Message.readCount == readCount) {
+                long remaining = maxWait - (System.currentTimeMillis() - start);
+                if (remaining <= 0) {
+                    return;
+                }
+                readLock.wait(remaining);
+            }
+        }
     }
     
     public long getTimeout() {
@@ -63,9 +165,9 @@ public abstract class Message {
     public final boolean isValidRead() throws TimeoutException {
         if (received) {
             receivedPackages++;
-            time += (System.currentTimeMillis() - startReadingTime);
+            time += (now() - startReadingTime);
             return true;
-        } else if (System.currentTimeMillis() - startReadingTime >= tmpTimeout) {
+        } else if (now() - startReadingTime >= tmpTimeout) {
             lostPackages++;
             throw new TimeoutException();
         } else {
@@ -88,7 +190,10 @@ public abstract class Message {
      * @param msg Mensagem a ser enviada
      */
     protected final void send(ByteBuffer msg) {
-        connection.send(msg);
+        Connection c = getConnection();
+        if (c != null) {
+            c.send(msg);
+        }
     }
 
     /**
@@ -97,7 +202,10 @@ public abstract class Message {
      * @param msg Mensagem a ser enviada
      */
     protected final void send(byte[] msg) {
-        connection.send(msg);
+        Connection c = getConnection();
+        if (c != null) {
+            c.send(msg);
+        }
     }
     
     public void updateRobot(Robot robot) {
@@ -22,6 +22,8 @@ import robotinterface.robot.simulation.VirtualDevice;
 public class IRProximitySensor extends Device implements VirtualDevice, Drawable {
 
     public static final int MAX_DISTANCE = 500;
+    //início do feixe desenhado, a partir do centro do robô
+    private static final int BEAM_START = 30;
     private int dist = 0;
     private double x, y;
 
@@ -67,6 +69,13 @@ public class IRProximitySensor extends Device implements VirtualDevice, Drawable
         return dist;
     }
 
+    /**
+     * Distância, a partir do centro do robô, até o fim do feixe desenhado.
+     */
+    public double getReach() {
+        return BEAM_START + dist * 2;
+    }
+
     @Override
     public void setLocation(double x, double y) {
         this.x = x;
@@ -97,7 +106,7 @@ public class IRProximitySensor extends Device implements VirtualDevice, Drawable
         AffineTransform t = ga.getT(g.getTransform());
         g.setTransform(t);
         g.setColor(new Color(.1f, 1f, .1f, 0.5f));
-        g.fillRect(30, -5, (int) (dist * 2), 10);
+        g.fillRect(BEAM_START, -5, (int) (dist * 2), 10);
         ga.done(t);
     }
 
@@ -9,9 +9,8 @@ import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Shape;
 import java.awt.Stroke;
-import java.awt.geom.Ellipse2D;
 import java.awt.geom.Line2D;
-import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -21,16 +20,12 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Iterator;
-import static java.lang.Math.cos;
-import static java.lang.Math.sin;
-import static java.lang.Math.pow;
-import static java.lang.Math.sqrt;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.HashMap;
 import java.util.Locale;
+import robotinterface.drawable.util.TileLayer;
 import robotinterface.robot.device.IRProximitySensor;
-import robotinterface.util.LineIterator;
 
 /**
  *
@@ -40,11 +35,17 @@ public class Environment {
 
     private final ArrayList<Line2D.Double> followLines = new ArrayList<>();
     private final ArrayList<Line2D.Double> walls = new ArrayList<>();
-    private final ArrayList<Line2D.Double> followLinesTmp = new ArrayList<>();
-    private final ArrayList<Line2D.Double> wallsTmp = new ArrayList<>();
+    private final SegmentGrid followLinesIndex = new SegmentGrid();
+    private final SegmentGrid wallsIndex = new SegmentGrid();
+    //meia largura da área sob o sensor de linha
+    private static final double FOLLOW_LINE_MARGIN = 3;
+    private final LineRaster followLinesRaster = new LineRaster(FOLLOW_LINE_MARGIN);
     private final ArrayList<double[]> wallsData = new ArrayList<>();
     private final ArrayList<double[]> followLinesData = new ArrayList<>();
     private static final Color obstacleColor = Color.decode("#BA9C3A");
+    private static final BasicStroke STROKE = new BasicStroke(5);
+    //paredes e linhas desenhadas uma vez e reaproveitadas entre os quadros
+    private TileLayer layer = null;
 
     public static Color getObstacleColor() {
         return obstacleColor;
@@ -86,19 +87,27 @@ public class Environment {
 
     public void addWall(double[] line) {
         wallsData.add(line);
-
-        walls.add(new Line2D.Double(line[0], line[1], line[2], line[3]));
+        Line2D.Double wall = new Line2D.Double(line[0], line[1], line[2], line[3]);
+        walls.add(wall);
+        wallsIndex.add(wall);
+        invalidate();
     }
 
     public void addFollowLine(double[] line) {
         followLinesData.add(line);
-        followLines.add(new Line2D.Double(line[0], line[1], line[2], line[3]));
+        Line2D.Double followLine = new Line2D.Double(line[0], line[1], line[2], line[3]);
+        followLines.add(followLine);
+        followLinesIndex.add(followLine);
+        followLinesRaster.add(followLine);
+        invalidate();
     }
 
     public void removeWall(Shape s) {
         int i = walls.indexOf(s);
         if (i != -1) {
             wallsData.remove(i);
+            wallsIndex.remove(walls.remove(i));
+            invalidate();
         }
     }
 
@@ -106,6 +115,10 @@ public class Environment {
         int i = followLines.indexOf(s);
         if (i != -1) {
             followLinesData.remove(i);
+            Line2D.Double followLine = followLines.remove(i);
+            followLinesIndex.remove(followLine);
+            followLinesRaster.remove(followLine);
+            invalidate();
         }
     }
 
@@ -186,60 +199,108 @@ public class Environment {
 
     public double beamDistance(double x, double y, double theta, double d) {
         double df = IRProximitySensor.MAX_DISTANCE;
-        double dt;
-        double x2 = x + IRProximitySensor.MAX_DISTANCE * cos(theta);
-        double y2 = y + IRProximitySensor.MAX_DISTANCE * sin(theta);
-        Line2D.Double line = new Line2D.Double(x, y, x2, y2);
-        Point2D p;
-        wallsTmp.clear();
-        wallsTmp.addAll(walls);
-        for (Line2D.Double wall : wallsTmp) {
-            Line2D.Double tmpLine = new Line2D.Double();
-            for (Iterator<Point2D> lineIt = new LineIterator(line); lineIt.hasNext();) {
-                p = lineIt.next();
-                tmpLine.setLine(x, y, p.getX(), p.getY());
-                if (tmpLine.intersectsLine(wall)) {
-                    dt = sqrt(pow(x - p.getX(), 2) + pow(y - p.getY(), 2)) - d;
-                    if (df > dt && dt > 0) {
-                        df = dt;
-                    }
-                }
-            }
+        double dist = wallsIndex.rayCast(x, y, theta, 0, IRProximitySensor.MAX_DISTANCE);
+        if (dist < IRProximitySensor.MAX_DISTANCE) {
+            //obstáculos mais próximos que d estão encostados no robô
+            df = Math.max(dist - d, 0);
         }
         return df / 2;
     }
 
-    public boolean isOver(double x, double y) {
-        followLinesTmp.clear();
-        followLinesTmp.addAll(followLines);
+    /**
+     * Verifica se um robô de raio <code>r</code> centrado em (x, y) encosta
+     * em alguma parede.
+     */
+    public boolean isColliding(double x, double y, double r) {
+        return wallsIndex.intersectsCircle(x, y, r);
+    }
 
-        for (Shape s : followLinesTmp) {
-            if (s.intersects(x - 3, y - 3, 6, 6)) {
+    /**
+     * Move um robô de raio <code>r</code> de (x, y) até (x + dx, y + dy) e
+     * retorna a fração do movimento em que ele encosta em uma parede, ou
+     * {@link Double#POSITIVE_INFINITY} se o caminho está livre.
+     *
+     * @see SegmentGrid#sweepCircle(double, double, double, double, double)
+     */
+    public double sweep(double x, double y, double dx, double dy, double r) {
+        return wallsIndex.sweepCircle(x, y, dx, dy, r);
+    }
+
+    /**
+     * Verifica se há uma linha sob o ponto (x, y). A resposta vem do mapa de
+     * bits das linhas; só os pontos na borda de uma linha usam o teste
+     * exato.
+     */
+    public boolean isOver(double x, double y) {
+        switch (followLinesRaster.test(x, y)) {
+            case LineRaster.INSIDE:
                 return true;
-            }
+            case LineRaster.OUTSIDE:
+                return false;
+            default:
+                return followLinesIndex.intersects(x - FOLLOW_LINE_MARGIN, y - FOLLOW_LINE_MARGIN,
+                        2 * FOLLOW_LINE_MARGIN, 2 * FOLLOW_LINE_MARGIN);
         }
-        return false;
     }
 
+    /**
+     * Define o lado das células do mapa de bits das linhas, em unidades do
+     * ambiente.
+     */
+    public void setFollowLineResolution(double resolution) {
+        followLinesRaster.setResolution(resolution);
+    }
+
+    public double getFollowLineResolution() {
+        return followLinesRaster.getResolution();
+    }
+
+    /**
+     * Desenha as paredes e linhas. Elas são guardadas em uma
+     * {@link TileLayer}, desenhada de novo só quando o ambiente ou o zoom
+     * mudam.
+     */
     public void draw(Graphics2D g) {
+        if (layer == null) {
+            layer = new TileLayer() {
+                @Override
+                protected void render(Graphics2D g, Rectangle2D.Double area) {
+                    drawLines(g, area);
+                }
+            };
+        }
+        layer.paint(g);
+    }
+
+    private void drawLines(Graphics2D g, Rectangle2D.Double area) {
 
         Stroke str = g.getStroke();
 
-        g.setStroke(new BasicStroke(5));
+        g.setStroke(STROKE);
 
         g.setColor(Color.BLACK);
-        for (Shape s : followLines) {
-            g.draw(s);
+        for (Line2D.Double l : followLines) {
+            if (TileLayer.intersects(area, l.x1, l.y1, l.x2, l.y2, STROKE.getLineWidth())) {
+                g.draw(l);
+            }
         }
 
         g.setColor(obstacleColor);
-        for (Shape s : walls) {
-            g.draw(s);
+        for (Line2D.Double l : walls) {
+            if (TileLayer.intersects(area, l.x1, l.y1, l.x2, l.y2, STROKE.getLineWidth())) {
+                g.draw(l);
+            }
         }
 
         g.setStroke(str);
     }
 
+    private void invalidate() {
+        if (layer != null) {
+            layer.invalidate();
+        }
+    }
+
     public Iterator<Line2D.Double> linesIterator() {
         return followLines.iterator();
     }
@@ -251,7 +312,11 @@ public class Environment {
     public void clearEnvironment() {
         wallsData.clear();
         walls.clear();
+        wallsIndex.clear();
         followLinesData.clear();
         followLines.clear();
+        followLinesIndex.clear();
+        followLinesRaster.clear();
+        invalidate();
     }
 }
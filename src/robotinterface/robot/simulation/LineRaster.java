@@ -0,0 +1,261 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+
+/**
+ * Mapa de bits das regiões próximas a um conjunto de segmentos de reta, para
+ * responder em tempo constante se um quadrado de meia largura
+ * <code>radius</code> centrado em um ponto encosta em algum segmento.
+ * <p>
+ * O plano é dividido em células de lado <code>resolution</code> e cada
+ * célula guarda dois bits: <i>perto</i>, se algum ponto dela pode encostar em
+ * um segmento, e <i>sobre</i>, se todos os pontos dela encostam. Um ponto em
+ * uma célula que não está perto não encosta em nada; um ponto em uma célula
+ * sobre um segmento encosta; os demais (a borda da faixa, com largura de uma
+ * célula) precisam do teste exato, que fica a cargo de quem consulta.
+ * <p>
+ * Segmentos novos são desenhados no mapa existente; se saírem dos limites
+ * dele, ou se um segmento for removido, o mapa é refeito. As consultas não
+ * bloqueiam e podem ser feitas por várias threads ao mesmo tempo.
+ *
+ * @author antunes
+ */
+public class LineRaster {
+
+    public static final double DEFAULT_RESOLUTION = 1;
+    public static final int OUTSIDE = -1;
+    public static final int UNKNOWN = 0;
+    public static final int INSIDE = 1;
+    //limite de células do mapa; acima disso as células aumentam
+    private static final long MAX_CELLS = 1L << 26;
+    //folga, em células, ao aumentar os limites do mapa
+    private static final int GROW_MARGIN = 64;
+    private final double radius;
+    private final ArrayList<Line2D.Double> lines = new ArrayList<>();
+    private final double[] range = new double[2];
+    private double resolution;
+    private volatile Grid grid = null;
+
+    private static final class Grid {
+
+        final double res;
+        final int x0;
+        final int y0;
+        final int w;
+        final int h;
+        final long[] near;
+        final long[] over;
+
+        Grid(double res, int x0, int y0, int w, int h) {
+            this.res = res;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.w = w;
+            this.h = h;
+            int words = (int) (((long) w * h + 63) >>> 6);
+            near = new long[words];
+            over = new long[words];
+        }
+
+        boolean contains(int cx1, int cy1, int cx2, int cy2) {
+            return cx1 >= x0 && cy1 >= y0 && cx2 < x0 + w && cy2 < y0 + h;
+        }
+
+        void set(long[] bits, int cx, int cy) {
+            int i = (cy - y0) * w + (cx - x0);
+            bits[i >>> 6] |= 1L << i;
+        }
+    }
+
+    /**
+     * @param radius meia largura do quadrado das consultas
+     */
+    public LineRaster(double radius) {
+        this(radius, DEFAULT_RESOLUTION);
+    }
+
+    public LineRaster(double radius, double resolution) {
+        this.radius = radius;
+        this.resolution = resolution;
+    }
+
+    public synchronized double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * Define o lado das células e refaz o mapa.
+     */
+    public synchronized void setResolution(double resolution) {
+        if (resolution > 0 && resolution != this.resolution) {
+            this.resolution = resolution;
+            rebuild(null);
+        }
+    }
+
+    public synchronized void add(Line2D.Double line) {
+        lines.add(line);
+        Grid g = grid;
+        if (g != null && g.contains(minCell(line.x1, line.x2, g.res), minCell(line.y1, line.y2, g.res),
+                maxCell(line.x1, line.x2, g.res), maxCell(line.y1, line.y2, g.res))) {
+            draw(g, line);
+        } else {
+            rebuild(g);
+        }
+    }
+
+    public synchronized void remove(Line2D.Double line) {
+        //Line2D não sobrescreve equals(), então compara a referência
+        if (lines.remove(line)) {
+            rebuild(null);
+        }
+    }
+
+    public synchronized void clear() {
+        lines.clear();
+        grid = null;
+    }
+
+    /**
+     * Classifica o ponto (x, y).
+     *
+     * @return {@link #INSIDE} se o quadrado centrado no ponto encosta em um
+     * segmento, {@link #OUTSIDE} se não encosta ou {@link #UNKNOWN} se é
+     * preciso o teste exato
+     */
+    public int test(double x, double y) {
+        Grid g = grid;
+        if (g == null) {
+            return OUTSIDE;
+        }
+        double fx = Math.floor(x / g.res) - g.x0;
+        double fy = Math.floor(y / g.res) - g.y0;
+        if (!(fx >= 0 && fy >= 0 && fx < g.w && fy < g.h)) {
+            return OUTSIDE;
+        }
+        int i = (int) fy * g.w + (int) fx;
+        long bit = 1L << i;
+        if ((g.near[i >>> 6] & bit) == 0) {
+            return OUTSIDE;
+        }
+        return ((g.over[i >>> 6] & bit) != 0) ? INSIDE : UNKNOWN;
+    }
+
+    //primeira e última células que um segmento pode marcar como perto
+    private int minCell(double a, double b, double res) {
+        return (int) Math.ceil((Math.min(a, b) - radius) / res) - 1;
+    }
+
+    private int maxCell(double a, double b, double res) {
+        return (int) Math.floor((Math.max(a, b) + radius) / res);
+    }
+
+    /**
+     * Refaz o mapa com limites que cobrem todos os segmentos e, se houver,
+     * os limites do mapa anterior.
+     */
+    private void rebuild(Grid old) {
+        if (lines.isEmpty()) {
+            grid = null;
+            return;
+        }
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Line2D.Double l : lines) {
+            minX = Math.min(minX, Math.min(l.x1, l.x2));
+            minY = Math.min(minY, Math.min(l.y1, l.y2));
+            maxX = Math.max(maxX, Math.max(l.x1, l.x2));
+            maxY = Math.max(maxY, Math.max(l.y1, l.y2));
+        }
+        double res = resolution;
+        while (true) {
+            long x1 = minCell(minX, minX, res) - GROW_MARGIN;
+            long y1 = minCell(minY, minY, res) - GROW_MARGIN;
+            long x2 = maxCell(maxX, maxX, res) + GROW_MARGIN;
+            long y2 = maxCell(maxY, maxY, res) + GROW_MARGIN;
+            if (old != null && old.res == res) {
+                x1 = Math.min(x1, old.x0);
+                y1 = Math.min(y1, old.y0);
+                x2 = Math.max(x2, old.x0 + old.w - 1);
+                y2 = Math.max(y2, old.y0 + old.h - 1);
+            }
+            long w = x2 - x1 + 1;
+            long h = y2 - y1 + 1;
+            if (w * h <= MAX_CELLS) {
+                Grid g = new Grid(res, (int) x1, (int) y1, (int) w, (int) h);
+                for (Line2D.Double l : lines) {
+                    draw(g, l);
+                }
+                grid = g;
+                return;
+            }
+            //ambiente grande demais para a resolução pedida
+            res *= 2;
+            old = null;
+        }
+    }
+
+    /**
+     * Marca as células perto e sobre o segmento.
+     */
+    private void draw(Grid g, Line2D.Double l) {
+        double r = radius;
+        double res = g.res;
+        int cx1 = minCell(l.x1, l.x2, res);
+        int cx2 = maxCell(l.x1, l.x2, res);
+        for (int cx = cx1; cx <= cx2; cx++) {
+            //perto: o trecho do segmento na faixa que algum ponto alcança
+            if (clip(l, cx * res - r, (cx + 1) * res + r)) {
+                int cy1 = (int) Math.ceil((range[0] - r) / res) - 1;
+                int cy2 = (int) Math.floor((range[1] + r) / res);
+                for (int cy = cy1; cy <= cy2; cy++) {
+                    g.set(g.near, cx, cy);
+                }
+            }
+            //sobre: o trecho na faixa que todos os pontos alcançam
+            double xa = (cx + 1) * res - r;
+            double xb = cx * res + r;
+            if (xa <= xb && clip(l, xa, xb)) {
+                int cy1 = (int) Math.ceil((range[0] - r) / res);
+                int cy2 = (int) Math.floor((range[1] + r) / res) - 1;
+                for (int cy = cy1; cy <= cy2; cy++) {
+                    g.set(g.over, cx, cy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Corta o segmento na faixa vertical [xa, xb] e guarda o intervalo de y
+     * do trecho restante em <code>range</code>.
+     *
+     * @return <code>false</code> se o segmento não passa pela faixa
+     */
+    private boolean clip(Line2D.Double l, double xa, double xb) {
+        double t0 = 0, t1 = 1;
+        double dx = l.x2 - l.x1;
+        if (dx == 0) {
+            if (l.x1 < xa || l.x1 > xb) {
+                return false;
+            }
+        } else {
+            double ta = (xa - l.x1) / dx;
+            double tb = (xb - l.x1) / dx;
+            t0 = Math.max(0, Math.min(ta, tb));
+            t1 = Math.min(1, Math.max(ta, tb));
+            if (t0 > t1) {
+                return false;
+            }
+        }
+        double ya = l.y1 + t0 * (l.y2 - l.y1);
+        double yb = l.y1 + t1 * (l.y2 - l.y1);
+        range[0] = Math.min(ya, yb);
+        range[1] = Math.max(ya, yb);
+        return true;
+    }
+}
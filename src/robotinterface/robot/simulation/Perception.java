@@ -7,21 +7,44 @@ package robotinterface.robot.simulation;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.geom.Rectangle2D;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
-import java.util.ArrayList;
 import java.util.List;
+import robotinterface.drawable.util.TileLayer;
 import robotinterface.robot.device.IRProximitySensor;
 
 /**
+ * Caminho percorrido pelo robô e obstáculos detectados pelos sensores,
+ * guardados em buffers circulares de pontos ({@link PointBuffer}); o desenho
+ * não bloqueia quem atualiza a percepção e só acrescenta os pontos novos.
  *
  * @author antunes
  */
 public class Perception {
 
-    private static final int MAX_ARRAY = 1000;
-    private final ArrayList<Point> path = new ArrayList<>();
-    private final ArrayList<Point> distanceMap = new ArrayList<>();
+    public static final int DEFAULT_CAPACITY = 1 << 17;
+    private final PointBuffer path;
+    private final PointBuffer distanceMap;
+    private final int[] last = new int[2];
+    private final PointBuffer collisions;
+    private volatile double pathLength = 0;
+    private volatile int collisionCount = 0;
+    private final TrailLayer trail = new TrailLayer();
+
+    public Perception() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity número máximo de pontos guardados do caminho e dos
+     * obstáculos; os mais antigos são descartados
+     */
+    public Perception(int capacity) {
+        path = new PointBuffer(capacity);
+        distanceMap = new PointBuffer(capacity);
+        collisions = new PointBuffer(capacity);
+    }
 
     public static void paintPoints(Graphics2D g, List<Point> points, int size) {
         for (Point p : points) {
@@ -29,63 +52,140 @@ public class Perception {
         }
     }
 
+    public PointBuffer getPath() {
+        return path;
+    }
+
+    public PointBuffer getDistanceMap() {
+        return distanceMap;
+    }
+
+    /**
+     * Pontos onde o robô encostou em uma parede ou em outro robô.
+     */
+    public PointBuffer getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * Registra o início de um contato do robô, com o centro em (x, y).
+     */
+    public void addCollision(double x, double y) {
+        synchronized (collisions) {
+            collisions.add((int) x, (int) y);
+            collisionCount++;
+        }
+    }
+
+    /**
+     * Retorna o número de contatos desde o último {@link #clearPath()}.
+     */
+    public int getCollisionCount() {
+        return collisionCount;
+    }
+
     public void addObstacle(double x, double y, double theta, double d) {
         if (d >= IRProximitySensor.MAX_DISTANCE - 10) {
             return;
         }
         x += d * cos(theta);
         y += d * sin(theta);
-        synchronized (distanceMap) {
-            Point p = new Point((int) x, (int) y);
-//            System.out.println(x + " " + y);
-            if (!distanceMap.isEmpty()) {
-                if (distanceMap.get(distanceMap.size() - 1).equals(p)) {
-                    return;
-                }
-            }
-            distanceMap.add(p);
-            while (distanceMap.size() > MAX_ARRAY) {
-                distanceMap.remove(0);
-            }
-        }
+//        System.out.println(x + " " + y);
+        distanceMap.addIfChanged((int) x, (int) y);
     }
 
     public void addPathPoint(double x, double y) {
+        int px = (int) x;
+        int py = (int) y;
         synchronized (path) {
-            Point p = new Point((int) x, (int) y);
-            if (!path.isEmpty()) {
-//                if (path.get(path.size() - 1).equals(p)) {
-//                    return;
-//                }
-            }
-            path.add(new Point((int) x, (int) y));
-            if (path.size() > MAX_ARRAY) {
-                path.remove(0);
+            if (path.getLast(last)) {
+                pathLength += Point.distance(last[0], last[1], px, py);
             }
+            path.add(px, py);
         }
     }
 
+    /**
+     * Desenha o caminho e os obstáculos. Os pontos ficam acumulados em uma
+     * {@link TileLayer} e só os novos são desenhados a cada quadro.
+     */
     public void draw(Graphics2D g) {
-        g.setColor(Color.red);
-        synchronized (path) {
-            paintPoints(g, path, 5);
+        trail.paint(g);
+
+//        g.drawOval(200, 200, 120,120);
+    }
+
+    /**
+     * Camada com os pontos do caminho e dos obstáculos. Os pontos que saem
+     * dos buffers continuam desenhados até que um oitavo da capacidade tenha
+     * saído; então a camada é desenhada de novo.
+     */
+    private class TrailLayer extends TileLayer {
+
+        private long pathEnd;
+        private long pathDrawn;
+        private long pathFirst;
+        private long obstaclesEnd;
+        private long obstaclesDrawn;
+        private long obstaclesFirst;
+
+        @Override
+        protected boolean beginFrame() {
+            pathEnd = path.getEnd();
+            obstaclesEnd = distanceMap.getEnd();
+            int slack = path.getCapacity() / 8;
+            if (path.getFirst() - pathFirst > slack || distanceMap.getFirst() - obstaclesFirst > slack) {
+                invalidate();
+            }
+            return pathEnd > pathDrawn || obstaclesEnd > obstaclesDrawn;
         }
 
-        g.setColor(Color.GREEN.brighter());
-        synchronized (distanceMap) {
-            paintPoints(g, distanceMap, 5);
+        @Override
+        protected void render(Graphics2D g, Rectangle2D.Double area) {
+            g.setColor(Color.red);
+            path.paint(g, 5, 0, pathEnd, area);
+            g.setColor(Color.GREEN.brighter());
+            distanceMap.paint(g, 5, 0, obstaclesEnd, area);
         }
 
-//        g.drawOval(200, 200, 120,120);
+        @Override
+        protected void append(Graphics2D g, Rectangle2D.Double area) {
+            g.setColor(Color.red);
+            path.paint(g, 5, pathDrawn, pathEnd, area);
+            g.setColor(Color.GREEN.brighter());
+            distanceMap.paint(g, 5, obstaclesDrawn, obstaclesEnd, area);
+        }
+
+        @Override
+        protected void endFrame(boolean rebuilt) {
+            if (rebuilt) {
+                pathFirst = path.getFirst();
+                obstaclesFirst = distanceMap.getFirst();
+            }
+            pathDrawn = pathEnd;
+            obstaclesDrawn = obstaclesEnd;
+        }
+    }
+
+    /**
+     * Retorna o comprimento total do caminho percorrido desde o último
+     * {@link #clearPath()}, incluindo os pontos que já saíram do buffer.
+     */
+    public double getPathLength() {
+        return pathLength;
     }
 
     public void clearPath() {
         synchronized (path) {
             path.clear();
+            pathLength = 0;
         }
-        synchronized (distanceMap) {
-            distanceMap.clear();
+        distanceMap.clear();
+        synchronized (collisions) {
+            collisions.clear();
+            collisionCount = 0;
         }
+        trail.invalidate();
     }
 
 }
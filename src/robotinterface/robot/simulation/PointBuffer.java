@@ -0,0 +1,168 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Buffer circular de pontos inteiros, guardados em um único
+ * <code>int[]</code> intercalado (x, y).
+ * <p>
+ * Quem escreve é serializado pelo próprio buffer (normalmente há uma única
+ * thread de simulação, então o bloqueio nunca é disputado). A leitura não
+ * bloqueia: o escritor grava o ponto e só então publica o novo total em um
+ * campo <code>volatile</code>, e o leitor percorre os pontos até o total que
+ * leu, descartando os que foram sobrescritos enquanto lia. O vetor começa
+ * pequeno e dobra até a capacidade máxima antes de começar a sobrescrever os
+ * pontos mais antigos.
+ *
+ * @author antunes
+ */
+public class PointBuffer {
+
+    private static final int INITIAL_SIZE = 256;
+    private final int capacity;
+    private volatile int[] data;
+    //total de pontos já escritos e índice do primeiro ponto válido
+    private volatile long count = 0;
+    private volatile long start = 0;
+    private int lastX;
+    private int lastY;
+
+    /**
+     * @param capacity número máximo de pontos guardados; arredondado para a
+     * próxima potência de 2
+     */
+    public PointBuffer(int capacity) {
+        int c = Integer.highestOneBit(Math.max(capacity, 1));
+        if (c < capacity) {
+            c <<= 1;
+        }
+        this.capacity = c;
+        data = new int[2 * Math.min(c, INITIAL_SIZE)];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Número de pontos disponíveis para leitura.
+     */
+    public int size() {
+        long end = count;
+        return (int) Math.max(Math.min(end - start, capacity), 0);
+    }
+
+    public boolean isEmpty() {
+        return count == start;
+    }
+
+    public synchronized void add(int x, int y) {
+        long i = count;
+        int[] d = data;
+        int n = d.length / 2;
+        if (i >= n && n < capacity) {
+            //ainda não deu a volta: os índices são as próprias posições
+            int[] tmp = new int[Math.min(2 * d.length, 2 * capacity)];
+            System.arraycopy(d, 0, tmp, 0, d.length);
+            data = d = tmp;
+            n = d.length / 2;
+        }
+        int slot = (int) (i & (n - 1)) * 2;
+        d[slot] = x;
+        d[slot + 1] = y;
+        lastX = x;
+        lastY = y;
+        count = i + 1;
+    }
+
+    /**
+     * Adiciona o ponto se ele for diferente do último adicionado.
+     *
+     * @return <code>true</code> se o ponto foi adicionado
+     */
+    public synchronized boolean addIfChanged(int x, int y) {
+        if (count != start && lastX == x && lastY == y) {
+            return false;
+        }
+        add(x, y);
+        return true;
+    }
+
+    /**
+     * Retorna o último ponto adicionado em <code>p[0]</code> e
+     * <code>p[1]</code>, ou <code>false</code> se o buffer está vazio.
+     */
+    public synchronized boolean getLast(int[] p) {
+        if (count == start) {
+            return false;
+        }
+        p[0] = lastX;
+        p[1] = lastY;
+        return true;
+    }
+
+    /**
+     * Descarta todos os pontos. Leituras em andamento ainda podem ver os
+     * pontos antigos.
+     */
+    public synchronized void clear() {
+        start = count;
+    }
+
+    /**
+     * Índice, na sequência de todos os pontos já adicionados, do próximo
+     * ponto a ser adicionado.
+     */
+    public long getEnd() {
+        return count;
+    }
+
+    /**
+     * Índice do ponto mais antigo ainda guardado.
+     */
+    public long getFirst() {
+        long end = count;
+        return Math.max(start, end - data.length / 2);
+    }
+
+    /**
+     * Desenha um círculo de diâmetro <code>size</code> em cada ponto, do mais
+     * antigo para o mais recente, sem bloquear quem escreve.
+     */
+    public void paint(Graphics2D g, int size) {
+        paint(g, size, 0, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Desenha os pontos de índice em [<code>from</code>, <code>to</code>)
+     * ainda guardados; se <code>area</code> não for nula, só os que podem
+     * aparecer nela.
+     */
+    public void paint(Graphics2D g, int size, long from, long to, Rectangle2D.Double area) {
+        //lê o total antes do vetor: o vetor é sempre tão novo quanto o total
+        long end = Math.min(count, to);
+        int[] d = data;
+        int n = d.length / 2;
+        long first = Math.max(Math.max(start, end - n), from);
+        int r = size / 2;
+        for (long i = first; i < end; i++) {
+            int slot = (int) (i & (n - 1)) * 2;
+            int x = d[slot];
+            int y = d[slot + 1];
+            if (count - i >= n) {
+                //sobrescrito (ou sendo sobrescrito) durante a leitura
+                continue;
+            }
+            if (area != null && (x + size < area.x || x - size > area.x + area.width
+                    || y + size < area.y || y - size > area.y + area.height)) {
+                continue;
+            }
+            g.fillOval(x - r, y - r, size, size);
+        }
+    }
+}
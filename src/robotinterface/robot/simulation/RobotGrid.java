@@ -0,0 +1,114 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.util.Arrays;
+import java.util.List;
+import robotinterface.robot.Robot;
+
+/**
+ * Índice espacial das posições publicadas dos robôs, refeito a cada passo da
+ * {@link Simulation}, para testar colisões entre robôs sem comparar todos os
+ * pares.
+ * <p>
+ * Como o {@link SegmentGrid}, espalha as células em uma tabela de tamanho
+ * fixo; as listas de cada célula são encadeadas em vetores, então refazer o
+ * índice não aloca objetos. Depois de {@link #build(List)} as consultas só
+ * leem o índice e podem ser feitas por várias threads.
+ *
+ * @author antunes
+ */
+public class RobotGrid {
+
+    private static final int TABLE_SIZE = 256; //potência de 2
+    private final double cellSize;
+    private final int[] head = new int[TABLE_SIZE];
+    private int[] next = new int[16];
+    private double[] posX = new double[16];
+    private double[] posY = new double[16];
+    private Robot[] robots = new Robot[16];
+    private int size = 0;
+
+    public RobotGrid() {
+        this(Robot.size);
+    }
+
+    /**
+     * @param cellSize lado das células; a soma dos raios de dois robôs não
+     * deve passar dele
+     */
+    public RobotGrid(double cellSize) {
+        this.cellSize = cellSize;
+        Arrays.fill(head, -1);
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private int bucket(int cx, int cy) {
+        int h = cx * 73856093 ^ cy * 19349663;
+        return h & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Refaz o índice com as posições publicadas dos robôs.
+     */
+    public void build(List<Robot> list) {
+        Arrays.fill(head, -1);
+        Arrays.fill(robots, 0, size, null);
+        size = list.size();
+        if (size > robots.length) {
+            int n = Math.max(size, 2 * robots.length);
+            next = new int[n];
+            posX = new double[n];
+            posY = new double[n];
+            robots = new Robot[n];
+        }
+        for (int i = 0; i < size; i++) {
+            Robot r = list.get(i);
+            robots[i] = r;
+            posX[i] = r.getPosX();
+            posY[i] = r.getPosY();
+            int b = bucket(cell(posX[i]), cell(posY[i]));
+            next[i] = head[b];
+            head[b] = i;
+        }
+    }
+
+    /**
+     * Move um robô de raio <code>r</code> de (x, y) até (x + dx, y + dy) e
+     * retorna a fração do movimento em que ele encosta em outro robô, ou
+     * {@link Double#POSITIVE_INFINITY} se não encosta. Os outros robôs estão
+     * parados nas posições do índice; robôs já encostados só bloqueiam o
+     * movimento se ele os aproximar.
+     */
+    public double sweep(Robot self, double x, double y, double dx, double dy, double r) {
+        double reach = r + Robot.size / 2;
+        int x1 = cell(Math.min(x, x + dx) - reach), x2 = cell(Math.max(x, x + dx) + reach);
+        int y1 = cell(Math.min(y, y + dy) - reach), y2 = cell(Math.max(y, y + dy) + reach);
+        double best = Double.POSITIVE_INFINITY;
+        for (int cx = x1; cx <= x2; cx++) {
+            for (int cy = y1; cy <= y2; cy++) {
+                for (int i = head[bucket(cx, cy)]; i != -1; i = next[i]) {
+                    if (robots[i] == self || cell(posX[i]) != cx || cell(posY[i]) != cy) {
+                        //o próprio robô ou outra célula na mesma posição da tabela
+                        continue;
+                    }
+                    double qx = x - posX[i];
+                    double qy = y - posY[i];
+                    if (qx * qx + qy * qy <= reach * reach) {
+                        if (qx * dx + qy * dy < 0) {
+                            return 0;
+                        }
+                        continue;
+                    }
+                    best = Math.min(best, SegmentGrid.sweepPoint(x, y, dx, dy, posX[i], posY[i], reach));
+                }
+            }
+        }
+        return best;
+    }
+}
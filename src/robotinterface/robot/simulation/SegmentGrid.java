@@ -0,0 +1,365 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice espacial de segmentos de reta em uma grade uniforme.
+ * <p>
+ * Cada segmento é registrado em todas as células que o seu retângulo
+ * envolvente ocupa. As células são espalhadas em uma tabela de tamanho fixo
+ * (hash espacial), então o ambiente não tem limites; colisões na tabela só
+ * adicionam candidatos, que são descartados pelo teste exato.
+ * <p>
+ * As consultas não alteram o índice e podem ser feitas por várias threads ao
+ * mesmo tempo; um segmento que ocupa várias células pode ser testado mais de
+ * uma vez, o que não muda o resultado.
+ *
+ * @author antunes
+ */
+public class SegmentGrid {
+
+    public static final double DEFAULT_CELL_SIZE = 64;
+    private static final int TABLE_SIZE = 1024; //potência de 2
+    private final double cellSize;
+    private final ArrayList<Line2D.Double>[] table;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size = 0;
+
+    public SegmentGrid() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SegmentGrid(double cellSize) {
+        this.cellSize = cellSize;
+        table = new ArrayList[TABLE_SIZE];
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            table[i] = new ArrayList<>();
+        }
+    }
+
+    private int cell(double v) {
+        return (int) Math.floor(v / cellSize);
+    }
+
+    private ArrayList<Line2D.Double> bucket(int cx, int cy) {
+        int h = cx * 73856093 ^ cy * 19349663;
+        return table[h & (TABLE_SIZE - 1)];
+    }
+
+    public void add(Line2D.Double line) {
+        lock.writeLock().lock();
+        try {
+            size++;
+            int x1 = cell(Math.min(line.x1, line.x2));
+            int x2 = cell(Math.max(line.x1, line.x2));
+            int y1 = cell(Math.min(line.y1, line.y2));
+            int y2 = cell(Math.max(line.y1, line.y2));
+            for (int cx = x1; cx <= x2; cx++) {
+                for (int cy = y1; cy <= y2; cy++) {
+                    ArrayList<Line2D.Double> b = bucket(cx, cy);
+                    if (b.isEmpty() || b.get(b.size() - 1) != line) {
+                        b.add(line);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Line2D.Double line) {
+        lock.writeLock().lock();
+        try {
+            boolean found = false;
+            for (ArrayList<Line2D.Double> b : table) {
+                //Line2D não sobrescreve equals(), então compara a referência
+                while (b.remove(line)) {
+                    found = true;
+                }
+            }
+            if (found) {
+                size--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (ArrayList<Line2D.Double> b : table) {
+                b.clear();
+            }
+            size = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Verifica se algum segmento intercepta o retângulo dado.
+     */
+    public boolean intersects(double x, double y, double w, double h) {
+        int x1 = cell(x), x2 = cell(x + w);
+        int y1 = cell(y), y2 = cell(y + h);
+        lock.readLock().lock();
+        try {
+            for (int cx = x1; cx <= x2; cx++) {
+                for (int cy = y1; cy <= y2; cy++) {
+                    ArrayList<Line2D.Double> b = bucket(cx, cy);
+                    for (int i = 0; i < b.size(); i++) {
+                        Line2D.Double l = b.get(i);
+                        if (Line2D.linesIntersect(l.x1, l.y1, l.x2, l.y2, x, y, x + w, y)
+                                || Line2D.linesIntersect(l.x1, l.y1, l.x2, l.y2, x, y + h, x + w, y + h)
+                                || Line2D.linesIntersect(l.x1, l.y1, l.x2, l.y2, x, y, x, y + h)
+                                || Line2D.linesIntersect(l.x1, l.y1, l.x2, l.y2, x + w, y, x + w, y + h)
+                                || (l.x1 >= x && l.x1 <= x + w && l.y1 >= y && l.y1 <= y + h)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Verifica se algum segmento passa a uma distância menor ou igual a
+     * <code>r</code> do ponto (x, y).
+     */
+    public boolean intersectsCircle(double x, double y, double r) {
+        int x1 = cell(x - r), x2 = cell(x + r);
+        int y1 = cell(y - r), y2 = cell(y + r);
+        double r2 = r * r;
+        lock.readLock().lock();
+        try {
+            for (int cx = x1; cx <= x2; cx++) {
+                for (int cy = y1; cy <= y2; cy++) {
+                    ArrayList<Line2D.Double> b = bucket(cx, cy);
+                    for (int i = 0; i < b.size(); i++) {
+                        Line2D.Double l = b.get(i);
+                        if (Line2D.ptSegDistSq(l.x1, l.y1, l.x2, l.y2, x, y) <= r2) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Move um círculo de raio <code>r</code> de (x, y) até (x + dx, y + dy) e
+     * retorna a fração do movimento, em [0, 1], em que ele encosta pela
+     * primeira vez em algum segmento, ou {@link Double#POSITIVE_INFINITY} se
+     * não encosta. Segmentos que o círculo já toca no início só bloqueiam o
+     * movimento se ele se aproximar deles; assim um círculo encostado pode se
+     * afastar.
+     */
+    public double sweepCircle(double x, double y, double dx, double dy, double r) {
+        int x1 = cell(Math.min(x, x + dx) - r), x2 = cell(Math.max(x, x + dx) + r);
+        int y1 = cell(Math.min(y, y + dy) - r), y2 = cell(Math.max(y, y + dy) + r);
+        double best = Double.POSITIVE_INFINITY;
+        lock.readLock().lock();
+        try {
+            for (int cx = x1; cx <= x2; cx++) {
+                for (int cy = y1; cy <= y2; cy++) {
+                    ArrayList<Line2D.Double> b = bucket(cx, cy);
+                    for (int i = 0; i < b.size(); i++) {
+                        best = Math.min(best, sweep(x, y, dx, dy, r, b.get(i)));
+                        if (best == 0) {
+                            return 0;
+                        }
+                    }
+                }
+            }
+            return best;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Instante de contato de um círculo em movimento com um segmento; veja
+     * {@link #sweepCircle(double, double, double, double, double)}.
+     */
+    static double sweep(double x, double y, double dx, double dy, double r, Line2D.Double l) {
+        double sx = l.x2 - l.x1;
+        double sy = l.y2 - l.y1;
+        double len2 = sx * sx + sy * sy;
+        //ponto do segmento mais próximo do centro
+        double u = (len2 == 0) ? 0 : ((x - l.x1) * sx + (y - l.y1) * sy) / len2;
+        u = Math.max(0, Math.min(1, u));
+        double nx = x - (l.x1 + u * sx);
+        double ny = y - (l.y1 + u * sy);
+        if (nx * nx + ny * ny <= r * r) {
+            //já encostado: bloqueia só se estiver se aproximando
+            return (nx * dx + ny * dy < 0) ? 0 : Double.POSITIVE_INFINITY;
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        if (len2 > 0) {
+            //lados do segmento, deslocados de r
+            double len = Math.sqrt(len2);
+            double h0 = ((x - l.x1) * sy - (y - l.y1) * sx) / len;
+            double hd = (dx * sy - dy * sx) / len;
+            if (h0 * hd < 0) {
+                double t = (Math.abs(h0) - r) / Math.abs(hd);
+                if (t >= 0 && t <= 1) {
+                    double v = ((x + t * dx - l.x1) * sx + (y + t * dy - l.y1) * sy) / len2;
+                    if (v >= 0 && v <= 1) {
+                        best = t;
+                    }
+                }
+            }
+        }
+        //extremidades
+        best = Math.min(best, sweepPoint(x, y, dx, dy, l.x1, l.y1, r));
+        best = Math.min(best, sweepPoint(x, y, dx, dy, l.x2, l.y2, r));
+        return best;
+    }
+
+    /**
+     * Instante, em [0, 1], em que o ponto (x, y) andando (dx, dy) chega à
+     * distância <code>r</code> de (cx, cy), partindo de mais longe, ou
+     * {@link Double#POSITIVE_INFINITY} se não chega.
+     */
+    static double sweepPoint(double x, double y, double dx, double dy, double cx, double cy, double r) {
+        double a = dx * dx + dy * dy;
+        if (a == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double qx = x - cx;
+        double qy = y - cy;
+        double b = qx * dx + qy * dy;
+        double c = qx * qx + qy * qy - r * r;
+        double disc = b * b - a * c;
+        if (b >= 0 || disc < 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double t = (-b - Math.sqrt(disc)) / a;
+        return (t >= 0 && t <= 1) ? t : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Lança um raio a partir de (x, y) na direção theta e retorna a distância
+     * até o segmento mais próximo atingido a partir de <code>min</code> da
+     * origem, ou <code>max</code> se nenhum segmento for atingido até essa
+     * distância.
+     * <p>
+     * As células são visitadas na ordem em que o raio as atravessa e a busca
+     * termina assim que a interseção mais próxima encontrada fica antes da
+     * saída da célula atual. Não aloca objetos e usa {@link StrictMath}, então
+     * o resultado é o mesmo em qualquer plataforma.
+     */
+    public double rayCast(double x, double y, double theta, double min, double max) {
+        double dirX = StrictMath.cos(theta);
+        double dirY = StrictMath.sin(theta);
+        double dx = dirX * max;
+        double dy = dirY * max;
+        double best = max;
+
+        int cx = cell(x);
+        int cy = cell(y);
+        int stepX = (dirX > 0) ? 1 : (dirX < 0) ? -1 : 0;
+        int stepY = (dirY > 0) ? 1 : (dirY < 0) ? -1 : 0;
+        //distância até a próxima borda vertical/horizontal e entre bordas
+        double nextX = (stepX > 0) ? ((cx + 1) * cellSize - x) / dirX
+                : (stepX < 0) ? (cx * cellSize - x) / dirX : Double.POSITIVE_INFINITY;
+        double nextY = (stepY > 0) ? ((cy + 1) * cellSize - y) / dirY
+                : (stepY < 0) ? (cy * cellSize - y) / dirY : Double.POSITIVE_INFINITY;
+        double deltaX = (stepX != 0) ? cellSize / Math.abs(dirX) : Double.POSITIVE_INFINITY;
+        double deltaY = (stepY != 0) ? cellSize / Math.abs(dirY) : Double.POSITIVE_INFINITY;
+
+        lock.readLock().lock();
+        try {
+            while (true) {
+                ArrayList<Line2D.Double> b = bucket(cx, cy);
+                for (int i = 0; i < b.size(); i++) {
+                    double t = intersection(x, y, dx, dy, b.get(i));
+                    if (t >= 0) {
+                        double dist = t * max;
+                        if (dist >= min && dist < best) {
+                            best = dist;
+                        }
+                    }
+                }
+                double exit = Math.min(nextX, nextY);
+                if (best <= exit || exit >= max) {
+                    return best;
+                }
+                if (nextX < nextY) {
+                    cx += stepX;
+                    nextX += deltaX;
+                } else {
+                    cy += stepY;
+                    nextY += deltaY;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Interseção do segmento (x, y) -> (x + dx, y + dy) com <code>l</code>.
+     * Se os dois forem colineares e se sobrepuserem, retorna o primeiro ponto
+     * em comum.
+     *
+     * @return o parâmetro t em [0, 1] do ponto de interseção ao longo do
+     * raio, ou -1 se não há interseção
+     */
+    static double intersection(double x, double y, double dx, double dy, Line2D.Double l) {
+        double sx = l.x2 - l.x1;
+        double sy = l.y2 - l.y1;
+        double qx = l.x1 - x;
+        double qy = l.y1 - y;
+        double denom = dx * sy - dy * sx;
+        if (denom == 0) {
+            if (qx * dy - qy * dx != 0) {
+                //paralelos
+                return -1;
+            }
+            //colineares: projeta as extremidades no raio
+            double len = dx * dx + dy * dy;
+            if (len == 0) {
+                return -1;
+            }
+            double t1 = (qx * dx + qy * dy) / len;
+            double t2 = ((l.x2 - x) * dx + (l.y2 - y) * dy) / len;
+            double tmin = Math.min(t1, t2);
+            double tmax = Math.max(t1, t2);
+            if (tmax < 0 || tmin > 1) {
+                return -1;
+            }
+            return Math.max(tmin, 0);
+        }
+        double t = (qx * sy - qy * sx) / denom;
+        double u = (qx * dy - qy * dx) / denom;
+        if (t < 0 || t > 1 || u < 0 || u > 1) {
+            return -1;
+        }
+        return t;
+    }
+}
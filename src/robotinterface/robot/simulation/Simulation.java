@@ -0,0 +1,262 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import robotinterface.robot.Robot;
+import robotinterface.util.trafficsimulator.Clock;
+
+/**
+ * Laço da simulação física dos robôs virtuais, independente do desenho.
+ * <p>
+ * A cada passo de tamanho fixo ({@link #getTimestep()} segundos) todos os
+ * robôs são avançados em <code>substeps</code> subpassos e depois publicam a
+ * sua posição, que é o que o desenho e os sensores leem. O tempo simulado
+ * acompanha o tempo real multiplicado por {@link #getSpeed()}; com velocidade
+ * menor ou igual a zero a simulação roda o mais rápido possível. Se um
+ * relógio for definido por {@link #setClock(Clock)}, enquanto ele não estiver
+ * pausado o tempo simulado acompanha o tempo dele, assim a física anda junto
+ * com o programa, inclusive quando o relógio é acelerado.
+ * <p>
+ * Com vários robôs, cada passo é dividido entre os núcleos do processador
+ * por um {@link ForkJoinPool}. Os robôs só alteram o próprio estado e o
+ * {@link Environment} é apenas lido durante um passo. As colisões entre
+ * robôs usam as posições publicadas no passo anterior, guardadas em um
+ * {@link RobotGrid}; por isso todos os robôs publicam juntos, no fim do
+ * passo.
+ *
+ * @author antunes
+ */
+public class Simulation implements Runnable {
+
+    public static final double DEFAULT_TIMESTEP = 0.01;
+    public static final int DEFAULT_SUBSTEPS = 4;
+    public static final double PATH_INTERVAL = 0.3;
+    //limite de passos atrasados recuperados de uma vez
+    private static final int MAX_STEPS_BEHIND = 25;
+    //número de robôs a partir do qual o passo é paralelo
+    private static final int PARALLEL_THRESHOLD = 4;
+    private final ForkJoinPool pool = new ForkJoinPool();
+    private final List<Robot> robots;
+    private final ArrayList<Robot> robotsTmp = new ArrayList<>();
+    private final RobotGrid grid = new RobotGrid();
+    private volatile double timestep = DEFAULT_TIMESTEP;
+    private volatile int substeps = DEFAULT_SUBSTEPS;
+    private volatile double speed = 1;
+    private volatile boolean paused = false;
+    private volatile boolean running = false;
+    private volatile Clock clock = null;
+    private Thread thread;
+    private long steps = 0;
+    private double lastPathTime = 0;
+
+    /**
+     * @param robots lista de robôs simulados; é sincronizada nela mesma
+     */
+    public Simulation(List<Robot> robots) {
+        this.robots = robots;
+    }
+
+    public double getTimestep() {
+        return timestep;
+    }
+
+    public void setTimestep(double timestep) {
+        if (timestep > 0) {
+            this.timestep = timestep;
+        }
+    }
+
+    public int getSubsteps() {
+        return substeps;
+    }
+
+    public void setSubsteps(int substeps) {
+        if (substeps > 0) {
+            this.substeps = substeps;
+        }
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    public void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Retorna o tempo simulado, em segundos.
+     */
+    public synchronized double getTime() {
+        return steps * timestep;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, "Simulation Thread");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Avança todos os robôs em um passo de tempo.
+     */
+    public synchronized void step() {
+        robotsTmp.clear();
+        synchronized (robots) {
+            robotsTmp.addAll(robots);
+        }
+
+        double dt = timestep / substeps;
+        int n = robotsTmp.size();
+        grid.build(robotsTmp);
+        if (n < PARALLEL_THRESHOLD) {
+            for (Robot robot : robotsTmp) {
+                step(robot, dt);
+            }
+        } else {
+            pool.invoke(new StepTask(0, n, dt));
+        }
+        for (Robot robot : robotsTmp) {
+            robot.publish();
+        }
+
+        steps++;
+
+        //mapeia a posição a cada PATH_INTERVAL segundos
+        double time = steps * timestep;
+        if (time - lastPathTime >= PATH_INTERVAL) {
+            lastPathTime = time;
+            for (Robot robot : robotsTmp) {
+                if (!(robot.getLeftWheelSpeed() == 0 && robot.getRightWheelSpeed() == 0)) {
+                    robot.updateVirtualPerception();
+                }
+            }
+        }
+    }
+
+    private void step(Robot robot, double dt) {
+        for (int i = 0; i < substeps; i++) {
+            robot.simulate(dt, grid);
+        }
+    }
+
+    /**
+     * Divide a lista de robôs ao meio até restar um robô por tarefa.
+     */
+    private class StepTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final double dt;
+
+        StepTask(int from, int to, double dt) {
+            this.from = from;
+            this.to = to;
+            this.dt = dt;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int i = from; i < to; i++) {
+                    step(robotsTmp.get(i), dt);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StepTask(from, mid, dt), new StepTask(mid, to, dt));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long last = System.nanoTime();
+        long lastClock = -1;
+        double accumulator = 0;
+        try {
+            while (running) {
+                long now = System.nanoTime();
+                double elapsed = (now - last) / 1e9;
+                double rate = speed;
+                last = now;
+
+                Clock c = clock;
+                if (c != null && !c.isPaused()) {
+                    //segue o tempo simulado do relógio
+                    long time = c.getTime();
+                    elapsed = (lastClock < 0) ? 0 : Math.max(time - lastClock, 0) / 1000.0;
+                    lastClock = time;
+                    rate = (c.getRatio() > 0) ? c.getRatio() : 1;
+                    accumulator += elapsed;
+                } else {
+                    lastClock = -1;
+                    if (speed > 0) {
+                        accumulator += elapsed * speed;
+                    }
+                }
+
+                if (paused) {
+                    accumulator = 0;
+                    Thread.sleep(10);
+                    continue;
+                }
+
+                if (rate <= 0) {
+                    step();
+                    continue;
+                }
+
+                int n = 0;
+                while (accumulator >= timestep && n < MAX_STEPS_BEHIND) {
+                    step();
+                    accumulator -= timestep;
+                    n++;
+                }
+                if (n == MAX_STEPS_BEHIND) {
+                    //muito atrasado: descarta o tempo restante
+                    accumulator = 0;
+                }
+
+                long wait = (long) ((timestep - accumulator) / rate * 1000);
+                if (wait > 0) {
+                    Thread.sleep(wait);
+                }
+            }
+        } catch (InterruptedException ex) {
+        }
+    }
+}
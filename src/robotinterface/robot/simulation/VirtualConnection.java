@@ -41,9 +41,13 @@ public class VirtualConnection implements Connection, Observer<ByteBuffer, Conne
     @Override
     public void update(ByteBuffer msg, Connection info) {
         if (msg.remaining() > 0) {
-            //notify observers 
+            //notify observers; cada um lê a mensagem a partir do início
+            int position = msg.position();
+            int limit = msg.limit();
             for (Observer<ByteBuffer, Connection> o : observers) {
-                o.update(msg.asReadOnlyBuffer(), this);
+                msg.limit(limit);
+                msg.position(position);
+                o.update(msg, this);
             }
         }
     }
@@ -63,6 +67,21 @@ public class VirtualConnection implements Connection, Observer<ByteBuffer, Conne
         }
     }
 
+    @Override
+    public void setBatching(boolean batching) {
+        if (realConnection != null) {
+            realConnection.setBatching(batching);
+        }
+        //o robô virtual responde na mesma thread, não é preciso agrupar
+    }
+
+    @Override
+    public void flush() {
+        if (realConnection != null) {
+            realConnection.flush();
+        }
+    }
+
     @Override
     public boolean available() {
         if (realConnection != null) {
@@ -0,0 +1,72 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor compartilhado pelas tarefas periódicas e orientadas a eventos do
+ * programa (interpretadores, relógios e repintura dos painéis).
+ * <p>
+ * Uma única thread de temporização dispara as tarefas agendadas e as repassa
+ * a um conjunto de threads reaproveitáveis, que só existem enquanto há
+ * trabalho. Uma tarefa que bloqueia (esperando uma resposta do robô, por
+ * exemplo) ocupa apenas uma thread do conjunto e não atrasa as demais.
+ * Tarefas periódicas devem se reagendar ao terminar, assim nunca há duas
+ * execuções da mesma tarefa ao mesmo tempo.
+ *
+ * @author antunes
+ */
+public final class Scheduler {
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new DaemonFactory("Scheduler"));
+    private static final ExecutorService workers = Executors.newCachedThreadPool(new DaemonFactory("Worker"));
+
+    private Scheduler() {
+    }
+
+    /**
+     * Executa a tarefa assim que possível.
+     */
+    public static void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Executa a tarefa depois de <code>delay</code> milissegundos. A tarefa
+     * pode ser cancelada enquanto não começou.
+     */
+    public static ScheduledFuture<?> schedule(final Runnable task, long delay) {
+        return timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                workers.execute(task);
+            }
+        }, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+    }
+
+    private static class DaemonFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
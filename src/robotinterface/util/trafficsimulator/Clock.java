@@ -22,26 +22,77 @@
 package robotinterface.util.trafficsimulator;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import robotinterface.util.Scheduler;
 
 /**
  * Classe responsavel por gerenciar o tempo da simulação e eventos.
+ * <p>
+ * Os ouvintes são notificados por uma tarefa periódica no
+ * {@link Scheduler} compartilhado, iniciada por {@link #start()}.
+ * <p>
+ * Os temporizadores ficam em uma fila de prioridade ordenada pelo instante
+ * em que o contador de cada um muda; cada avanço do relógio só visita os
+ * temporizadores vencidos. O tempo até o próximo vencimento é dado por
+ * {@link #getTimeToNextTimer()}, para quem espera poder dormir até lá.
+ * <p>
+ * O relógio é a fonte de tempo simulado do interpretador, dos temporizadores,
+ * dos tempos limite das mensagens e da física: {@link #getTime()} avança com
+ * o tempo real multiplicado por {@link #getRatio()} ({@link #increase()}) ou
+ * em saltos discretos ({@link #advance(long)}), quando não há motivo para
+ * acompanhar o tempo real.
  */
-public class Clock extends Thread {
+public class Clock {
 
     private int d;
     private int h;
     private int m;
     private int s;
     private int ms;
-    private long lastMs;
+    private volatile long lastMs;
+    //true enquanto o relógio só avança por advance()
+    private volatile boolean discrete = false;
+    //fração de milissegundo perdida ao multiplicar pelo ratio
+    private double carry = 0;
     private long dt;
-    private boolean paused = true;
-    private double ratio;
+    private volatile boolean paused = true;
+    private volatile double ratio;
     private long ems;
-    private final ArrayList<Timer> timers;
+    private static final Comparator<Timer> DEADLINE_ORDER = new Comparator<Timer>() {
+        @Override
+        public int compare(Timer a, Timer b) {
+            return (a.deadline < b.deadline) ? -1 : ((a.deadline == b.deadline) ? 0 : 1);
+        }
+    };
+    private final PriorityQueue<Timer> timers;
+    private final ArrayList<Timer> dueTimers = new ArrayList<>();
+    //tempo simulado acumulado desde a criação, em milissegundos
+    private long timerTime = 0;
     private final ArrayList<ClockListener> listeners;
     private int sleep;
+    //notificação periódica; alive indica se a tarefa está agendada
+    private boolean started = false;
+    private boolean alive = false;
+    private final Runnable notifyTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (Clock.this) {
+                if (!started) {
+                    alive = false;
+                    return;
+                }
+            }
+            if (!paused) {
+                synchronized (listeners) {
+                    for (ClockListener cl : listeners) {
+                        cl.clockIncrease(Clock.this);
+                    }
+                }
+            }
+            Scheduler.schedule(this, sleep);
+        }
+    };
 
     public Clock(int d, int h, int m, int s, int ms, double ratio) {
         this.d = d;
@@ -51,7 +102,7 @@ public class Clock extends Thread {
         this.ms = ms;
         this.ratio = ratio;
         ems = 0;
-        timers = new ArrayList<>();
+        timers = new PriorityQueue<>(11, DEADLINE_ORDER);
         listeners = new ArrayList<>();
         sleep = 100;
     }
@@ -62,55 +113,91 @@ public class Clock extends Thread {
 
     public void increase() {
         if (!paused) {
-            dt = System.currentTimeMillis() - lastMs;
+            long now = System.currentTimeMillis();
+            dt = now - lastMs;
+            lastMs = now;
+            discrete = false;
+            double scaled = dt * ratio + carry;
+            long step = (long) scaled;
+            carry = scaled - step;
+            update(step, step);
+        }
+    }
+
+    /**
+     * Avança o relógio em uma quantidade fixa de tempo simulado, sem consultar
+     * o relógio do sistema. Usado na execução sem interface gráfica, onde o
+     * tempo não precisa acompanhar o tempo real.
+     *
+     * @param milis tempo simulado, em milissegundos
+     */
+    public void advance(long milis) {
+        if (!paused) {
+            dt = milis;
             lastMs = System.currentTimeMillis();
-            ms += (long) (dt * ratio);
-            ems += (long) (dt * ratio);
+            discrete = true;
+            update(milis, milis);
+        }
+    }
 
-            synchronized (timers) {
-                for (Iterator<Timer> it = timers.iterator(); it.hasNext();) {
-                    if (it.next().increase(dt)) {
-                        it.remove();
-                    }
+    private void update(long timerDt, long clockDt) {
+        ms += clockDt;
+        ems += clockDt;
+
+        synchronized (timers) {
+            timerTime += timerDt;
+            //retira todos os vencidos antes de reinserir, pois um
+            //temporizador sem período vence de novo no mesmo instante
+            while (!timers.isEmpty() && timers.peek().deadline <= timerTime) {
+                dueTimers.add(timers.poll());
+            }
+            for (int i = 0; i < dueTimers.size(); i++) {
+                Timer t = dueTimers.get(i);
+                long elapsed = timerTime - t.lastUpdate;
+                t.lastUpdate = timerTime;
+                if (t.increase(elapsed)) {
+                    t.queued = false;
+                } else {
+                    t.deadline = t.nextDeadline(timerTime);
+                    timers.add(t);
                 }
             }
+            dueTimers.clear();
+        }
 
-            if (ms >= 1000) {
-                s += ms / 1000;
-                ms = ms % 1000;
-                if (s >= 60) {
-                    m += s / 60;
-                    s = s % 60;
-                    if (m >= 60) {
-                        h += m / 60;
-                        m = m % 60;
-                        if (h >= 24) {
-                            d += h / 24;
-                            h = h % 24;
-                        }
+        if (ms >= 1000) {
+            s += ms / 1000;
+            ms = ms % 1000;
+            if (s >= 60) {
+                m += s / 60;
+                s = s % 60;
+                if (m >= 60) {
+                    h += m / 60;
+                    m = m % 60;
+                    if (h >= 24) {
+                        d += h / 24;
+                        h = h % 24;
                     }
                 }
             }
         }
     }
 
-    @Override
-    public void run() {
-        while (!this.isInterrupted()) {
-            if (!paused) {
-                synchronized (listeners) {
-                    for (ClockListener cl : listeners) {
-                        cl.clockIncrease(this);
-                    }
-                }
-            }
-            try {
-                Thread.sleep(sleep);
-            } catch (Exception ex) {
-            }
+    /**
+     * Começa a notificar os ouvintes a cada <code>sleep</code> milissegundos.
+     */
+    public synchronized void start() {
+        started = true;
+        if (!alive) {
+            alive = true;
+            Scheduler.execute(notifyTask);
         }
     }
 
+    public synchronized void stop() {
+        started = false;
+    }
+
     public void reset() {
         paused = false;
         lastMs = System.currentTimeMillis();
@@ -169,15 +256,64 @@ public class Clock extends Thread {
 
     public void addTimer(Timer t) {
         synchronized (timers) {
-            if (!timers.contains(t)){
-                timers.add(t);
+            if (t.queued) {
+                //o prazo pode ter mudado (reset ou outro tick)
+                timers.remove(t);
             }
+            t.lastUpdate = timerTime;
+            t.deadline = t.nextDeadline(timerTime);
+            t.queued = true;
+            timers.add(t);
         }
     }
 
     public void removeTimer(Timer t) {
         synchronized (timers) {
-            timers.remove(t);
+            if (t.queued) {
+                timers.remove(t);
+                t.queued = false;
+            }
+        }
+    }
+
+    /**
+     * Retorna o tempo simulado atual, em milissegundos, contado desde a
+     * criação do relógio; não volta a zero em {@link #reset()}. Entre duas
+     * chamadas de {@link #increase()} o valor acompanha o tempo real.
+     */
+    public long getTime() {
+        long time;
+        synchronized (timers) {
+            time = timerTime;
+        }
+        long last = lastMs;
+        if (!paused && !discrete && last != 0) {
+            time += (long) ((System.currentTimeMillis() - last) * ratio);
+        }
+        return time;
+    }
+
+    /**
+     * Converte um intervalo de tempo simulado em tempo real, conforme
+     * {@link #getRatio()}.
+     */
+    public long toRealTime(long milis) {
+        if (ratio <= 0) {
+            return milis;
+        }
+        return (long) Math.ceil(milis / ratio);
+    }
+
+    /**
+     * Retorna quantos milissegundos de tempo simulado faltam para o próximo
+     * temporizador vencer, ou -1 se não há temporizadores.
+     */
+    public long getTimeToNextTimer() {
+        synchronized (timers) {
+            if (timers.isEmpty()) {
+                return -1;
+            }
+            return Math.max(timers.peek().deadline - timerTime, 0);
         }
     }
 
@@ -34,6 +34,10 @@ public class Timer {
     private boolean paused = false;
     private boolean consumed = false;
     private boolean disposable = true;
+    //estado mantido pelo Clock enquanto o temporizador está na fila
+    long lastUpdate;
+    long deadline;
+    boolean queued = false;
 
     public Timer(long milis) {
         if (milis < 0) {
@@ -107,6 +111,22 @@ public class Timer {
         return consumed;
     }
 
+    /**
+     * Instante, no tempo do relógio, em que o contador deste temporizador
+     * muda de novo, supondo que ele foi atualizado em <code>now</code>.
+     */
+    synchronized long nextDeadline(long now) {
+        if (paused) {
+            //não avança enquanto pausado; verifica de novo depois
+            return now + Math.max(tick, 1);
+        }
+        if (tick == 0) {
+            //conta a cada avanço do relógio
+            return now;
+        }
+        return now + (count + 1) * tick - timeElapsed;
+    }
+
     public synchronized long getTimeElapsed() {
         return timeElapsed;
     }
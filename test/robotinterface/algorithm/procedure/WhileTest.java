@@ -0,0 +1,58 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.algorithm.procedure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import robotinterface.algorithm.parser.Parser;
+import robotinterface.interpreter.Interpreter;
+
+/**
+ * Quantas vezes o bloco de um {@link While} é executado.
+ *
+ * Antes, um laço com a condição falsa na entrada executava o bloco uma vez
+ * (como um do-while); agora ele é pulado, como no fluxograma e no código
+ * compilado.
+ *
+ * @author antunes
+ */
+public class WhileTest {
+
+    /**
+     * Conta as execuções do bloco de <code>while (i &lt; fim)</code>, com
+     * <code>i</code> começando em <code>inicio</code>.
+     */
+    private static String iterations(int inicio, int fim, boolean compiled) throws Exception {
+        Interpreter interpreter = new Interpreter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        interpreter.setOutput(new PrintStream(out, true, "UTF-8"));
+        interpreter.setCompiled(compiled);
+        interpreter.setMainFunction(Parser.decode("func main() {\n"
+                + "    var n = 0;\n"
+                + "    var i = " + inicio + ";\n"
+                + "    while (i < " + fim + ") {\n"
+                + "        n = n + 1;\n"
+                + "        i = i + 1;\n"
+                + "    }\n"
+                + "    print(\"%v\", n);\n"
+                + "}\n"));
+        assertTrue("a execução falhou", interpreter.runHeadless());
+        return out.toString("UTF-8").trim();
+    }
+
+    @Test
+    public void falseOnEntrySkipsBody() throws Exception {
+        assertEquals("0.00", iterations(5, 3, false));
+        assertEquals("0.00", iterations(5, 3, true));
+    }
+
+    @Test
+    public void runsUntilConditionIsFalse() throws Exception {
+        assertEquals("3.00", iterations(0, 3, false));
+        assertEquals("3.00", iterations(0, 3, true));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.interpreter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Executa um exemplo que consulta um sensor em um laço infinito pelo
+ * {@link BatchRunner}; o relógio simulado precisa avançar mesmo sem
+ * esperas explícitas entre os comandos.
+ *
+ * @author antunes
+ */
+public class BatchRunnerTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("batch", "");
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Extrai uma entrada de um projeto (.proj) para o diretório temporário.
+     */
+    private File extract(ZipFile proj, String entry, String name) throws IOException {
+        ZipEntry e = proj.getEntry(entry);
+        assertNotNull(entry, e);
+        File file = new File(dir, name);
+        try (InputStream in = proj.getInputStream(e); OutputStream out = new FileOutputStream(file)) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void pollingLoopAdvancesClock() throws Exception {
+        BatchRunner runner = new BatchRunner();
+        try (ZipFile proj = new ZipFile("examples/saiaDaMinhaFrente.proj")) {
+            runner.addProgram(extract(proj, "functions/saiaDaMinhaFrente.func", "saiaDaMinhaFrente.func"));
+            runner.addEnvironment(extract(proj, "environment/environment.env", "saiaDaMinhaFrente.env"));
+        }
+        runner.setThreads(1);
+        runner.setTimeLimit(2);
+        runner.setWallLimit(30);
+
+        List<BatchRunner.Result> results = runner.run();
+        assertEquals(1, results.size());
+        BatchRunner.Result r = results.get(0);
+        //while (1): termina pelo limite de tempo simulado, não pelo de tempo real
+        assertEquals(BatchRunner.STATUS_TIMEOUT, r.getStatus());
+        assertEquals(2, r.getTime(), 0.1);
+        assertTrue("o robô não andou", r.getPathLength() > 0);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.interpreter.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.nfunk.jep.JEP;
+import org.nfunk.jep.Variable;
+import robotinterface.algorithm.parser.Parser;
+import robotinterface.algorithm.procedure.Function;
+import robotinterface.interpreter.ExecutionException;
+import robotinterface.interpreter.Interpreter;
+import robotinterface.interpreter.ResourceManager;
+
+/**
+ * Executa funções com comandos e variáveis misturados pelo
+ * {@link FunctionCompiler} e compara a saída com a do interpretador.
+ *
+ * @author antunes
+ */
+public class FunctionCompilerTest {
+
+    /**
+     * Executa o programa sem interface gráfica e retorna o que foi impresso.
+     */
+    private static String run(String program, boolean compiled) throws Exception {
+        Function f = Parser.decode(program);
+        Interpreter interpreter = new Interpreter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        interpreter.setOutput(new PrintStream(out, true, "UTF-8"));
+        interpreter.setCompiled(compiled);
+        interpreter.setMainFunction(f);
+        assertTrue("a execução falhou", interpreter.runHeadless());
+        assertEquals("caminho de execução", compiled, interpreter.isLastRunCompiled());
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Executa o programa compilado e retorna o interpretador de expressões,
+     * com as variáveis que ficaram na tabela de símbolos.
+     */
+    private static JEP runCompiled(String program) throws Exception {
+        JEP parser = new JEP();
+        parser.setAllowAssignment(true);
+        ResourceManager rm = new ResourceManager();
+        rm.setResource(parser);
+        rm.setResource(new Interpreter());
+        FunctionCompiler.compile(Parser.decode(program)).run(rm);
+        return parser;
+    }
+
+    private static boolean exists(JEP parser, String name) {
+        Variable v = parser.getSymbolTable().getVar(name);
+        return v != null && v.hasValidValue();
+    }
+
+    private static void assertSameOutput(String program) throws Exception {
+        String interpreted = run(program, false);
+        assertFalse("o programa não imprimiu nada", interpreted.isEmpty());
+        assertEquals(interpreted, run(program, true));
+    }
+
+    @Test
+    public void commandBeforeFirstAssignment() throws Exception {
+        assertSameOutput("func main() {\n"
+                + "    print(\"inicio\");\n"
+                + "    var i = 0;\n"
+                + "    while (i < 3) {\n"
+                + "        i = i + 1;\n"
+                + "        print(\"%v\", i);\n"
+                + "    }\n"
+                + "}\n");
+    }
+
+    @Test
+    public void variableDeclaredInsideLoop() throws Exception {
+        assertSameOutput("func main() {\n"
+                + "    var i = 0;\n"
+                + "    while (i < 3) {\n"
+                + "        var k = i * 2;\n"
+                + "        wait(10);\n"
+                + "        print(\"%v\", k);\n"
+                + "        i = i + 1;\n"
+                + "    }\n"
+                + "    print(\"%v\", i);\n"
+                + "}\n");
+    }
+
+    @Test
+    public void compilesWithoutFallback() throws Exception {
+        Function f = Parser.decode("func main() {\n"
+                + "    print(\"inicio\");\n"
+                + "    var x = 1;\n"
+                + "    if (x > 0) {\n"
+                + "        wait(10);\n"
+                + "        var y = x + 1;\n"
+                + "        print(\"%v\", y);\n"
+                + "    }\n"
+                + "}\n");
+        assertNotNull(FunctionCompiler.compile(f));
+    }
+
+    @Test
+    public void blockVariableDoesNotLeak() throws Exception {
+        JEP parser = runCompiled("func main() {\n"
+                + "    var i = 0;\n"
+                + "    while (i < 2) {\n"
+                + "        var k = i;\n"
+                + "        i = i + 1;\n"
+                + "    }\n"
+                + "    if (i > 0) {\n"
+                + "        var t = 1;\n"
+                + "    }\n"
+                + "}\n");
+        assertTrue(exists(parser, "i"));
+        assertEquals(2.0, ((Number) parser.getSymbolTable().getValue("i")).doubleValue(), 0);
+        assertFalse("variável do laço ficou na tabela", exists(parser, "k"));
+        assertFalse("variável do if ficou na tabela", exists(parser, "t"));
+    }
+
+    @Test
+    public void redeclaredAfterBlock() throws Exception {
+        assertSameOutput("func main() {\n"
+                + "    var i = 0;\n"
+                + "    while (i < 2) {\n"
+                + "        var k = i;\n"
+                + "        i = i + 1;\n"
+                + "    }\n"
+                + "    var k = 7;\n"
+                + "    print(\"%v\", k);\n"
+                + "}\n");
+    }
+
+    @Test
+    public void redeclarationFails() throws Exception {
+        String program = "func main() {\n"
+                + "    var x = 1;\n"
+                + "    var x = 2;\n"
+                + "}\n";
+        for (boolean compiled : new boolean[]{false, true}) {
+            Interpreter interpreter = new Interpreter();
+            interpreter.setOutput(new PrintStream(new ByteArrayOutputStream()));
+            interpreter.setCompiled(compiled);
+            interpreter.setMainFunction(Parser.decode(program));
+            assertFalse("redeclaração aceita (compilado: " + compiled + ")",
+                    interpreter.runHeadless());
+        }
+        try {
+            runCompiled(program);
+            fail("redeclaração aceita");
+        } catch (ExecutionException e) {
+            assertEquals("Variable already exists!", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.connection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import robotinterface.robot.Robot;
+
+/**
+ * Agrupamento das mensagens de saída pela {@link OutboundQueue}, comparado
+ * com o envio de cada mensagem separadamente.
+ *
+ * @author antunes
+ */
+public class OutboundQueueTest {
+
+    private static byte[] msg(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    private static boolean add(OutboundQueue q, byte[] m) {
+        return q.add(m, 0, m.length);
+    }
+
+    private static byte[] contents(OutboundQueue q) {
+        return Arrays.copyOf(q.getData(), q.size());
+    }
+
+    /**
+     * Estado do robô depois de executar os comandos, todos no formato
+     * <code>comando id tamanho dados...</code>: o último valor de cada
+     * <code>CMD_SET</code> (por dispositivo e primeiro byte) e a sequência
+     * dos outros comandos.
+     */
+    private static void execute(byte[] data, int length, HashMap<String, String> sets, ArrayList<String> others) {
+        int i = 0;
+        while (i < length) {
+            int len = data[i + 2] & 0xFF;
+            byte[] cmd = Arrays.copyOfRange(data, i, i + 3 + len);
+            if (cmd[0] == Robot.CMD_SET) {
+                sets.put(cmd[1] + ":" + len + ":" + (len > 0 ? cmd[3] : 0), Arrays.toString(cmd));
+            } else {
+                others.add(Arrays.toString(cmd));
+            }
+            i += 3 + len;
+        }
+        assertEquals(length, i);
+    }
+
+    @Test
+    public void lastSetReplacesPrevious() {
+        OutboundQueue q = new OutboundQueue();
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 0, 10)));
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 0, 20)));
+        assertArrayEquals(msg(Robot.CMD_SET, 1, 2, 0, 20), contents(q));
+        //outro motor da mesma ponte H não sobrescreve
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 1, 30)));
+        assertEquals(10, q.size());
+        //uma mensagem com os dois motores sobrescreve a anterior
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 1, 40, Robot.CMD_SET, 1, 2, 0, 50)));
+        assertArrayEquals(msg(Robot.CMD_SET, 1, 2, 0, 20, Robot.CMD_SET, 1, 2, 1, 40, Robot.CMD_SET, 1, 2, 0, 50), contents(q));
+    }
+
+    @Test
+    public void otherCommandsAreKept() {
+        OutboundQueue q = new OutboundQueue();
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 1, 7)));
+        assertTrue(add(q, msg(Robot.CMD_GET, 1, 0)));
+        assertTrue(add(q, msg(Robot.CMD_GET, 1, 0)));
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 1, 7)));
+        assertEquals(14, q.size());
+        q.clear();
+        assertTrue(q.isEmpty());
+        //não junta com uma mensagem de antes do clear()
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 1, 7)));
+        assertEquals(4, q.size());
+    }
+
+    @Test
+    public void sameStateAsSendingEachMessage() {
+        Random random = new Random(7);
+        for (int round = 0; round < 500; round++) {
+            OutboundQueue q = new OutboundQueue();
+            HashMap<String, String> expectedSets = new HashMap<>();
+            ArrayList<String> expectedOthers = new ArrayList<>();
+            HashMap<String, String> sets = new HashMap<>();
+            ArrayList<String> others = new ArrayList<>();
+            int count = 1 + random.nextInt(30);
+            for (int k = 0; k < count; k++) {
+                byte[] m;
+                int kind = random.nextInt(5);
+                int id = random.nextInt(3);
+                if (kind == 0) {
+                    m = msg(Robot.CMD_GET, id, 0);
+                } else if (kind == 1) {
+                    m = msg(Robot.CMD_SET, id, 2, 0, random.nextInt(256), Robot.CMD_SET, id, 2, 1, random.nextInt(256));
+                } else {
+                    m = msg(Robot.CMD_SET, id, 2, random.nextInt(2), random.nextInt(256));
+                }
+                execute(m, m.length, expectedSets, expectedOthers);
+                if (!add(q, m)) {
+                    //pacote cheio: envia e começa outro
+                    execute(q.getData(), q.size(), sets, others);
+                    q.clear();
+                    assertTrue(add(q, m));
+                }
+                assertTrue(q.size() <= OutboundQueue.MAX_FRAME);
+            }
+            execute(q.getData(), q.size(), sets, others);
+            assertEquals(expectedSets, sets);
+            assertEquals(expectedOthers, others);
+        }
+    }
+
+    @Test
+    public void frameLimit() {
+        OutboundQueue q = new OutboundQueue();
+        //mensagens diferentes que não se sobrescrevem
+        byte[] get = msg(Robot.CMD_GET, 1, 2, 0, 0);
+        for (int i = 0; i < OutboundQueue.MAX_FRAME / get.length; i++) {
+            assertTrue(add(q, get));
+        }
+        assertEquals(255, q.size());
+        byte[] before = contents(q);
+        assertFalse(add(q, msg(Robot.CMD_GET, 1, 0)));
+        assertArrayEquals(before, contents(q));
+
+        //um pacote pode ter exatamente MAX_FRAME bytes
+        q.clear();
+        assertTrue(add(q, new byte[250]));
+        assertFalse(add(q, msg(Robot.CMD_GET, 1, 3, 0, 0, 0)));
+        assertTrue(add(q, msg(Robot.CMD_GET, 1, 2, 0, 0)));
+        assertEquals(OutboundQueue.MAX_FRAME, q.size());
+    }
+
+    @Test
+    public void replacedSetFreesSpace() {
+        OutboundQueue q = new OutboundQueue();
+        assertTrue(add(q, new byte[250]));
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 0, 10)));
+        assertEquals(OutboundQueue.MAX_FRAME, q.size());
+        //cheio, mas substitui o último CMD_SET em vez de ser recusado
+        assertTrue(add(q, msg(Robot.CMD_SET, 1, 2, 0, 20)));
+        assertEquals(OutboundQueue.MAX_FRAME, q.size());
+        assertEquals(20, q.getData()[254]);
+    }
+}
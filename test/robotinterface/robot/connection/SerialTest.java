@@ -0,0 +1,124 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.connection;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import robotinterface.util.observable.Observer;
+
+/**
+ * Separação das mensagens recebidas pela {@link Serial}: um byte com o
+ * tamanho seguido dos dados, que podem chegar em várias leituras.
+ *
+ * @author antunes
+ */
+public class SerialTest {
+
+    private Serial serial;
+    private final ArrayList<byte[]> frames = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        serial = new Serial(57600);
+        serial.attach(new Observer<ByteBuffer, Connection>() {
+            @Override
+            public void update(ByteBuffer msg, Connection info) {
+                byte[] b = new byte[msg.remaining()];
+                msg.get(b);
+                frames.add(b);
+            }
+        });
+    }
+
+    private void receive(int... bytes) throws Exception {
+        byte[] b = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            b[i] = (byte) bytes[i];
+        }
+        serial.read(new ByteArrayInputStream(b));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    @Test
+    public void frameSplitAcrossReads() throws Exception {
+        receive(3, 1);
+        assertTrue(frames.isEmpty());
+        receive(2);
+        assertTrue(frames.isEmpty());
+        receive(3, 2, 7);
+        assertEquals(1, frames.size());
+        assertArrayEquals(bytes(1, 2, 3), frames.get(0));
+        //o byte de tamanho também pode chegar sozinho
+        receive(8);
+        assertEquals(2, frames.size());
+        assertArrayEquals(bytes(7, 8), frames.get(1));
+        assertEquals(2, serial.getReceivedPackages());
+    }
+
+    @Test
+    public void severalFramesInOneRead() throws Exception {
+        receive(1, 9, 2, 4, 5, 1);
+        assertEquals(2, frames.size());
+        assertArrayEquals(bytes(9), frames.get(0));
+        assertArrayEquals(bytes(4, 5), frames.get(1));
+        receive(6);
+        assertArrayEquals(bytes(6), frames.get(2));
+    }
+
+    @Test
+    public void emptyFrameIsSkipped() throws Exception {
+        receive(0, 0, 2, 9, 8, 0);
+        assertEquals(1, frames.size());
+        assertArrayEquals(bytes(9, 8), frames.get(0));
+        assertEquals(1, serial.getReceivedPackages());
+        assertFalse(serial.available());
+    }
+
+    @Test
+    public void largestFrame() throws Exception {
+        int[] msg = new int[256];
+        msg[0] = 255;
+        for (int i = 1; i < msg.length; i++) {
+            msg[i] = i - 1;
+        }
+        //várias vezes, em pedaços, para dar a volta no buffer circular
+        for (int n = 1; n <= 6; n++) {
+            receive(Arrays.copyOfRange(msg, 0, 100));
+            receive(Arrays.copyOfRange(msg, 100, 255));
+            assertEquals(n - 1, frames.size());
+            receive(Arrays.copyOfRange(msg, 255, 256));
+            assertEquals(n, frames.size());
+            byte[] f = frames.get(n - 1);
+            assertEquals(255, f.length);
+            for (int i = 0; i < f.length; i++) {
+                assertEquals(i, f[i] & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void receiveWithoutObservers() throws Exception {
+        Serial s = new Serial(57600);
+        s.read(new ByteArrayInputStream(bytes(2, 4, 5)));
+        assertTrue(s.available());
+        byte[] b = new byte[10];
+        assertEquals(2, s.receive(b, b.length));
+        assertEquals(4, b[0]);
+        assertEquals(5, b[1]);
+        assertFalse(s.available());
+    }
+}
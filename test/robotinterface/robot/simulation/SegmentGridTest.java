@@ -0,0 +1,152 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package robotinterface.robot.simulation;
+
+import java.awt.geom.Line2D;
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Compara as consultas do {@link SegmentGrid} com uma busca linear em todos
+ * os segmentos.
+ *
+ * @author antunes
+ */
+public class SegmentGridTest {
+
+    private static final int STEPS = 20000;
+    private final Random random = new Random(42);
+    private final ArrayList<Line2D.Double> walls = new ArrayList<>();
+    private final SegmentGrid grid = new SegmentGrid();
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 60; i++) {
+            //segmentos curtos e longos, também em coordenadas negativas
+            double x = coord(), y = coord();
+            double len = (i % 4 == 0) ? 600 : 80;
+            Line2D.Double l = new Line2D.Double(x, y,
+                    x + (random.nextDouble() - .5) * len, y + (random.nextDouble() - .5) * len);
+            walls.add(l);
+            grid.add(l);
+        }
+        //paredes alinhadas com os eixos e com as bordas das células
+        add(new Line2D.Double(-512, -512, 512, -512));
+        add(new Line2D.Double(512, -512, 512, 512));
+        add(new Line2D.Double(128, 0, 128, 256));
+    }
+
+    private void add(Line2D.Double l) {
+        walls.add(l);
+        grid.add(l);
+    }
+
+    private double coord() {
+        return (random.nextDouble() - .5) * 1000;
+    }
+
+    /**
+     * Distância do raio ao segmento mais próximo testando todos eles.
+     */
+    private double linearRayCast(double x, double y, double theta, double min, double max) {
+        double dx = StrictMath.cos(theta) * max;
+        double dy = StrictMath.sin(theta) * max;
+        double best = max;
+        for (Line2D.Double l : walls) {
+            double t = SegmentGrid.intersection(x, y, dx, dy, l);
+            if (t >= 0 && t * max >= min && t * max < best) {
+                best = t * max;
+            }
+        }
+        return best;
+    }
+
+    @Test
+    public void rayCastMatchesLinearScan() {
+        for (int i = 0; i < 2000; i++) {
+            double x = coord(), y = coord();
+            //inclui as direções dos eixos
+            double theta = (i % 10 == 0) ? (i / 10 % 4) * Math.PI / 2 : random.nextDouble() * 2 * Math.PI;
+            double min = (i % 3 == 0) ? 20 : 0;
+            double max = 100 + random.nextDouble() * 900;
+            assertEquals("raio " + i, linearRayCast(x, y, theta, min, max),
+                    grid.rayCast(x, y, theta, min, max), 1e-9);
+        }
+    }
+
+    @Test
+    public void rayCastWithoutWalls() {
+        assertEquals(300, new SegmentGrid().rayCast(10, 10, 1, 0, 300), 0);
+    }
+
+    /**
+     * Primeira fração do movimento, em passos de 1/STEPS, em que o círculo
+     * encosta em algum segmento, ou infinito se não encosta.
+     */
+    private double linearSweep(double x, double y, double dx, double dy, double r) {
+        for (int k = 0; k <= STEPS; k++) {
+            double t = (double) k / STEPS;
+            for (Line2D.Double l : walls) {
+                if (Line2D.ptSegDist(l.x1, l.y1, l.x2, l.y2, x + t * dx, y + t * dy) <= r) {
+                    return t;
+                }
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    @Test
+    public void sweepCircleMatchesSampling() {
+        int hits = 0;
+        for (int i = 0; i < 200; i++) {
+            double x = coord(), y = coord();
+            double r = 5 + random.nextDouble() * 20;
+            if (grid.intersectsCircle(x, y, r)) {
+                continue;
+            }
+            double dx = (random.nextDouble() - .5) * 400;
+            double dy = (random.nextDouble() - .5) * 400;
+            double expected = linearSweep(x, y, dx, dy, r);
+            double t = grid.sweepCircle(x, y, dx, dy, r);
+            if (Double.isInfinite(expected)) {
+                assertTrue("movimento " + i + ": " + t, Double.isInfinite(t));
+            } else {
+                hits++;
+                assertTrue("movimento " + i + ": " + t + " depois de " + expected, t <= expected);
+                assertTrue("movimento " + i + ": " + t + " antes de " + expected, t > expected - 1.0 / STEPS);
+            }
+        }
+        assertTrue("nenhum movimento encostou em um segmento", hits > 10);
+    }
+
+    @Test
+    public void sweepAgainstSegment() {
+        Line2D.Double wall = new Line2D.Double(100, -50, 100, 50);
+        //de frente para a parede: encosta em x = 90
+        assertEquals(0.9, SegmentGrid.sweep(0, 0, 100, 0, 10, wall), 1e-12);
+        //passa ao lado, a 10 da extremidade
+        assertTrue(Double.isInfinite(SegmentGrid.sweep(0, 60.5, 200, 0, 10, wall)));
+        //encostado: bloqueia ao se aproximar, mas pode se afastar
+        assertEquals(0, SegmentGrid.sweep(95, 0, 10, 0, 10, wall), 0);
+        assertTrue(Double.isInfinite(SegmentGrid.sweep(95, 0, -10, 0, 10, wall)));
+    }
+
+    @Test
+    public void sweepPointContactFraction() {
+        //chega à distância 1 de (5, 0) em x = 4
+        assertEquals(0.4, SegmentGrid.sweepPoint(0, 0, 10, 0, 5, 0, 1), 1e-12);
+        //na diagonal: |(t*10 - 5, t*10 - 5)| = 1
+        double t = (5 - Math.sqrt(0.5)) / 10;
+        assertEquals(t, SegmentGrid.sweepPoint(0, 0, 10, 10, 5, 5, 1), 1e-12);
+        //não alcança, se afasta, passa longe ou não se move
+        assertTrue(Double.isInfinite(SegmentGrid.sweepPoint(0, 0, 3, 0, 5, 0, 1)));
+        assertTrue(Double.isInfinite(SegmentGrid.sweepPoint(0, 0, -10, 0, 5, 0, 1)));
+        assertTrue(Double.isInfinite(SegmentGrid.sweepPoint(0, 0, 10, 0, 5, 2, 1)));
+        assertTrue(Double.isInfinite(SegmentGrid.sweepPoint(0, 0, 0, 0, 0.5, 0, 1)));
+    }
+}